@@ -0,0 +1,64 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * CacheClient 的命中、未命中（查库并回写）和逻辑过期命中三条路径，数据库用固定对象代替
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheClientBenchmark {
+
+    private static final String LOGICAL_KEY_PREFIX = "cache:shop:logical:";
+
+    private InMemoryStringRedisTemplate redis;
+    private CacheClient cacheClient;
+    private Shop shop;
+    // 未命中路径每次用一个新 id
+    private final AtomicLong missId = new AtomicLong(1000000);
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        redis = new InMemoryStringRedisTemplate();
+        cacheClient = new CacheClient(redis);
+        shop = new Shop()
+                .setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now()).setUpdateTime(LocalDateTime.now());
+        cacheClient.set(CACHE_SHOP_KEY + 1L, shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        cacheClient.setWithLogicalExpire(LOGICAL_KEY_PREFIX + 1L, shop, 1L, TimeUnit.DAYS);
+    }
+
+    @Benchmark
+    public Shop passThroughHit() {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, 1L, Shop.class, id -> shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop passThroughMiss() {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, missId.incrementAndGet(), Shop.class,
+                id -> shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop logicalExpireHit() {
+        return cacheClient.queryWithLogicalExpire(LOGICAL_KEY_PREFIX, 1L, Shop.class, id -> shop, 1L, TimeUnit.DAYS);
+    }
+}
@@ -0,0 +1,58 @@
+package com.hmdp.benchmark;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的 Redis 替身，只实现基准测试用到的 String 命令，过期时间直接忽略。
+ * 测出来的是业务代码本身的开销，不包含网络往返
+ */
+public class InMemoryStringRedisTemplate extends StringRedisTemplate {
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = (ValueOperations<String, String>) Proxy.newProxyInstance(
+            ValueOperations.class.getClassLoader(),
+            new Class<?>[]{ValueOperations.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "get":
+                        return values.get((String) args[0]);
+                    case "set":
+                        values.put((String) args[0], (String) args[1]);
+                        return null;
+                    case "setIfAbsent":
+                        return values.putIfAbsent((String) args[0], (String) args[1]) == null;
+                    case "increment":
+                        long delta = args.length > 1 ? (Long) args[1] : 1L;
+                        return Long.valueOf(values.merge((String) args[0], String.valueOf(delta),
+                                (old, d) -> String.valueOf(Long.parseLong(old) + Long.parseLong(d))));
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return values.remove(key) != null;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public void clear() {
+        values.clear();
+    }
+}
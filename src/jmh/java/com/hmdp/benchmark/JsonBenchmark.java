@@ -0,0 +1,73 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点路径上的 JSON 和 Bean 转换：
+ * 1、逻辑过期缓存先解析成 RedisData，再把 data 转成目标对象（两次转换），对比一次解析直接取字段
+ * 2、登录拦截器把 Redis hash 填充成 UserDTO
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private String redisDataJson;
+    private Map<Object, Object> userMap;
+
+    @Setup
+    public void setup() {
+        Shop shop = new Shop()
+                .setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setArea("大关").setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now()).setUpdateTime(LocalDateTime.now());
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusDays(1));
+        redisDataJson = JSONUtil.toJsonStr(redisData);
+
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("用户_abcdefghij");
+        user.setIcon("/imgs/icons/kkjtbcr.jpg");
+        userMap = new HashMap<>();
+        BeanUtil.beanToMap(user, new HashMap<>(), CopyOptions.create().setIgnoreNullValue(true))
+                .forEach((field, value) -> userMap.put(field, value.toString()));
+    }
+
+    @Benchmark
+    public Shop redisDataDoubleParse() {
+        RedisData redisData = JSONUtil.toBean(redisDataJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public Shop redisDataSingleParse() {
+        JSONObject json = JSONUtil.parseObj(redisDataJson);
+        json.getLocalDateTime("expireTime", null);
+        return json.getJSONObject("data").toBean(Shop.class);
+    }
+
+    @Benchmark
+    public UserDTO fillUserDTO() {
+        return BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.PasswordEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PasswordEncoder.matches：拆分盐值并计算一次 MD5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        encoded = PasswordEncoder.encode("123456");
+    }
+
+    @Benchmark
+    public Boolean matches() {
+        return PasswordEncoder.matches(encoded, "123456");
+    }
+
+    @Benchmark
+    public Boolean mismatches() {
+        return PasswordEncoder.matches(encoded, "654321");
+    }
+}
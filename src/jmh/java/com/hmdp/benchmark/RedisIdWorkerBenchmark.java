@@ -0,0 +1,38 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisIdWorker.nextId：时间戳计算、日期格式化和自增
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+
+    private RedisIdWorker redisIdWorker;
+
+    @Setup
+    public void setup() {
+        redisIdWorker = new RedisIdWorker();
+        ReflectionTestUtils.setField(redisIdWorker, "stringRedisTemplate", new InMemoryStringRedisTemplate());
+    }
+
+    @Benchmark
+    public Long nextId() {
+        return redisIdWorker.nextId("order");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long nextIdContended() {
+        return redisIdWorker.nextId("order");
+    }
+}
@@ -0,0 +1,40 @@
+package com.hmdp.loadtest;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 在随机端口上启动嵌入式 redis-server。
+ * 要声明在 @SpringBootTest 之前：这样它最先启动、最后停止，Spring 容器（@DirtiesContext）关闭之后才停掉 Redis，
+ * 否则 Lettuce 会在退出前一直尝试重连
+ */
+public class EmbeddedRedisExtension implements BeforeAllCallback, AfterAllCallback {
+
+    private static RedisServer redisServer;
+    private static int port;
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+        redisServer.start();
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    public static int getPort() {
+        return port;
+    }
+}
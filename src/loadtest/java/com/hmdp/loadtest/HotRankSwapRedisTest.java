@@ -0,0 +1,121 @@
+package com.hmdp.loadtest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * hot_rank_swap.lua：重算好的排行榜替换上线时，叠加还没刷库的点赞增量，保留重算期间新发布的博文，
+ * 排行榜和发布时间一起替换
+ */
+@ExtendWith(EmbeddedRedisExtension.class)
+class HotRankSwapRedisTest {
+
+    private static final double GRAVITY = 1.8;
+    private static final long START_SECOND = 1_700_000_000L;
+
+    private static final String TMP_KEY = BLOG_HOT_KEY + ":tmp";
+    private static final String TMP_TIME_KEY = BLOG_HOT_TIME_KEY + ":tmp";
+    private static final List<String> KEYS = Arrays.asList(TMP_KEY, TMP_TIME_KEY, BLOG_HOT_KEY, BLOG_HOT_TIME_KEY,
+            BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY);
+
+    private static final DefaultRedisScript<Long> SWAP_SCRIPT;
+
+    static {
+        SWAP_SCRIPT = new DefaultRedisScript<>();
+        SWAP_SCRIPT.setLocation(new ClassPathResource("hot_rank_swap.lua"));
+        SWAP_SCRIPT.setResultType(Long.class);
+    }
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", EmbeddedRedisExtension.getPort()));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void reset() {
+        stringRedisTemplate.delete(KEYS);
+    }
+
+    @Test
+    void unflushedDeltasAreFolded() {
+        // 数据库里 1 号博文 9 赞，1 小时前发布；还有 2 个赞没刷库、1 个赞正在刷库
+        long createSecond = START_SECOND - 3600;
+        tmpBlog("1", score(9, 1), createSecond);
+        stringRedisTemplate.opsForHash().put(BLOG_LIKED_DELTA_KEY, "1", "2");
+        stringRedisTemplate.opsForHash().put(BLOG_LIKED_FLUSHING_KEY, "1", "1");
+
+        assertEquals(1L, swap());
+        assertEquals(score(12, 1), stringRedisTemplate.opsForZSet().score(BLOG_HOT_KEY, "1"), 1e-9);
+        assertEquals(String.valueOf(createSecond), stringRedisTemplate.opsForHash().get(BLOG_HOT_TIME_KEY, "1"));
+        assertFalse(stringRedisTemplate.hasKey(TMP_KEY));
+        assertFalse(stringRedisTemplate.hasKey(TMP_TIME_KEY));
+    }
+
+    @Test
+    void blogsSavedDuringRecomputeAreKept() {
+        tmpBlog("1", score(9, 1), START_SECOND - 3600);
+        // 重算前就在榜上的旧博文，这次没进前几名，被替换掉
+        hotBlog("2", score(0, 5), START_SECOND - 5 * 3600);
+        // 重算期间发布并被点赞的博文，保留排行榜上的热度
+        double liked = score(0, 0) + 1 / Math.pow(2, GRAVITY);
+        hotBlog("3", liked, START_SECOND + 10);
+
+        assertEquals(2L, swap());
+        assertNull(stringRedisTemplate.opsForZSet().score(BLOG_HOT_KEY, "2"));
+        assertNull(stringRedisTemplate.opsForHash().get(BLOG_HOT_TIME_KEY, "2"));
+        assertEquals(liked, stringRedisTemplate.opsForZSet().score(BLOG_HOT_KEY, "3"), 1e-9);
+        assertEquals(String.valueOf(START_SECOND + 10), stringRedisTemplate.opsForHash().get(BLOG_HOT_TIME_KEY, "3"));
+    }
+
+    @Test
+    void emptyRecomputeClearsRank() {
+        hotBlog("2", score(0, 5), START_SECOND - 5 * 3600);
+
+        assertEquals(0L, swap());
+        assertFalse(stringRedisTemplate.hasKey(BLOG_HOT_KEY));
+        assertFalse(stringRedisTemplate.hasKey(BLOG_HOT_TIME_KEY));
+    }
+
+    private static void tmpBlog(String blogId, double score, long createSecond) {
+        stringRedisTemplate.opsForZSet().add(TMP_KEY, blogId, score);
+        stringRedisTemplate.opsForHash().put(TMP_TIME_KEY, blogId, String.valueOf(createSecond));
+    }
+
+    private static void hotBlog(String blogId, double score, long createSecond) {
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blogId, score);
+        stringRedisTemplate.opsForHash().put(BLOG_HOT_TIME_KEY, blogId, String.valueOf(createSecond));
+    }
+
+    private static Long swap() {
+        return stringRedisTemplate.execute(SWAP_SCRIPT, KEYS, String.valueOf(START_SECOND), String.valueOf(GRAVITY));
+    }
+
+    private static double score(int liked, double ageHours) {
+        return (liked + 1) / Math.pow(ageHours + 2, GRAVITY);
+    }
+}
@@ -0,0 +1,70 @@
+package com.hmdp.loadtest;
+
+import cn.hutool.json.JSONUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一类请求的延迟统计，可以多线程同时记录，输出请求数和延迟分位数（毫秒）
+ */
+class LatencyStats {
+
+    private final List<Long> latencies = new ArrayList<>();
+
+    synchronized void record(long nanos) {
+        latencies.add(nanos);
+    }
+
+    synchronized int count() {
+        return latencies.size();
+    }
+
+    synchronized double percentile(double p) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int index = Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(index, 0)) / 1e6;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("requests", count());
+        map.put("p50", percentile(0.50));
+        map.put("p99", percentile(0.99));
+        map.put("p999", percentile(0.999));
+        map.put("max", percentile(1.0));
+        return map;
+    }
+
+    /**
+     * 压测结果写到 target/loadtest/{name}-{时间戳}.json，同时打印到控制台
+     */
+    static void writeReport(String name, Map<String, Object> report) throws IOException {
+        File dir = new File("target/loadtest");
+        dir.mkdirs();
+        File file = new File(dir, name + "-" + System.currentTimeMillis() + ".json");
+        String json = JSONUtil.toJsonPrettyStr(report);
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        System.out.println(json);
+    }
+
+    static double throughput(int requests, long durationNanos) {
+        return requests * 1e9 / durationNanos;
+    }
+
+    static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,151 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.utils.OrderStatusCache;
+import com.hmdp.utils.OrderStatusCache.OrderStatus;
+import com.hmdp.utils.OrderStatusCache.State;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 订单状态的写入顺序：不管写入的先后，CREATED 都不会被失败、没有订单、受理中覆盖，
+ * 超时的 PENDING 只在没有新状态时改为失败。
+ * 每次断言都用新的 OrderStatusCache 读，绕过本地缓存，看到的是 Redis 里的状态
+ */
+@ExtendWith(EmbeddedRedisExtension.class)
+class OrderStatusCacheRedisTest {
+
+    private static final Long USER_ID = 1L;
+    private static final Long VOUCHER_ID = 10L;
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private OrderStatusCache cache;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", EmbeddedRedisExtension.getPort()));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void reset() {
+        stringRedisTemplate.delete(ORDER_STATUS_KEY + USER_ID);
+        cache = new OrderStatusCache(stringRedisTemplate);
+    }
+
+    @Test
+    void createdIsNotReplacedByFailedOrNone() {
+        cache.pending(USER_ID, VOUCHER_ID);
+        cache.created(USER_ID, VOUCHER_ID, 100L);
+        // 下单前的库存预检、finally 里的兜底失败、查库后的回写都晚于创建成功到达
+        cache.failed(USER_ID, VOUCHER_ID, "库存不足！");
+        cache.none(USER_ID, VOUCHER_ID);
+        cache.pending(USER_ID, VOUCHER_ID);
+
+        assertCreated(cache.get(USER_ID, VOUCHER_ID));
+        assertCreated(redisStatus());
+    }
+
+    @Test
+    void noneIsOnlyWrittenWhenThereIsNoStatus() {
+        cache.none(USER_ID, VOUCHER_ID);
+        assertEquals(State.NONE, redisStatus().getState());
+
+        // 有了新的状态之后，查库没有订单的回写不覆盖
+        cache.pending(USER_ID, VOUCHER_ID);
+        cache.none(USER_ID, VOUCHER_ID);
+        assertEquals(State.PENDING, redisStatus().getState());
+    }
+
+    @Test
+    void failedCanBeRetried() {
+        cache.pending(USER_ID, VOUCHER_ID);
+        cache.failed(USER_ID, VOUCHER_ID, "下单失败，请重试！");
+        assertEquals(State.FAILED, redisStatus().getState());
+
+        cache.pending(USER_ID, VOUCHER_ID);
+        assertEquals(State.PENDING, redisStatus().getState());
+        cache.created(USER_ID, VOUCHER_ID, 100L);
+        assertCreated(redisStatus());
+    }
+
+    @Test
+    void pendingCarriesAcceptTime() {
+        long before = System.currentTimeMillis();
+        cache.pending(USER_ID, VOUCHER_ID);
+
+        OrderStatus status = redisStatus();
+        assertEquals(State.PENDING, status.getState());
+        assertNotNull(status.getSince());
+        assertTrue(status.getSince() >= before);
+        assertFalse(status.isStalePending());
+    }
+
+    @Test
+    void stalePendingFailsOnlyIfUnchanged() {
+        // 1、一分钟前受理、之后没有结果的 PENDING
+        stringRedisTemplate.opsForHash().put(ORDER_STATUS_KEY + USER_ID, VOUCHER_ID.toString(),
+                "PENDING:" + (System.currentTimeMillis() - 60000));
+        OrderStatus stale = redisStatus();
+        assertTrue(stale.isStalePending());
+
+        // 2、查库没有订单，还是同一个 PENDING，改为失败
+        cache.failPending(USER_ID, VOUCHER_ID, stale, "下单失败，请重试！");
+        OrderStatus failed = redisStatus();
+        assertEquals(State.FAILED, failed.getState());
+        assertEquals("下单失败，请重试！", failed.getMessage());
+    }
+
+    @Test
+    void stalePendingKeepsNewerStatus() {
+        stringRedisTemplate.opsForHash().put(ORDER_STATUS_KEY + USER_ID, VOUCHER_ID.toString(),
+                "PENDING:" + (System.currentTimeMillis() - 60000));
+        OrderStatus stale = redisStatus();
+
+        // 查库期间用户重新下单，新的 PENDING 不会被改成失败
+        cache.pending(USER_ID, VOUCHER_ID);
+        cache.failPending(USER_ID, VOUCHER_ID, stale, "下单失败，请重试！");
+        OrderStatus status = redisStatus();
+        assertEquals(State.PENDING, status.getState());
+        assertFalse(status.isStalePending());
+
+        // 查库期间订单创建成功，也不会被改成失败
+        OrderStatus pending = redisStatus();
+        cache.created(USER_ID, VOUCHER_ID, 100L);
+        cache.failPending(USER_ID, VOUCHER_ID, pending, "下单失败，请重试！");
+        assertCreated(redisStatus());
+    }
+
+    @Test
+    void legacyPendingWithoutTimeIsStale() {
+        stringRedisTemplate.opsForHash().put(ORDER_STATUS_KEY + USER_ID, VOUCHER_ID.toString(), "PENDING");
+        assertTrue(redisStatus().isStalePending());
+    }
+
+    private static void assertCreated(OrderStatus status) {
+        assertEquals(State.CREATED, status.getState());
+        assertEquals(100L, status.getOrderId());
+    }
+
+    // 用新的实例读，不经过本地缓存
+    private static OrderStatus redisStatus() {
+        return new OrderStatusCache(stringRedisTemplate).get(USER_ID, VOUCHER_ID);
+    }
+}
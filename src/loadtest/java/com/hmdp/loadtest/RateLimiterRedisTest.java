@@ -0,0 +1,110 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.utils.RateLimiter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * rate_limit.lua 的 GCRA 行为：空闲时放行 burst 个请求，超出后拒绝并给出等待时间，
+ * 每过一个间隔补回一个许可，空闲足够久后突发容量全部恢复。
+ * 判断 Redis 里的状态时用新的 RateLimiter，绕过本地记住的拒绝
+ */
+@ExtendWith(EmbeddedRedisExtension.class)
+class RateLimiterRedisTest {
+
+    private static final String KEY = "test:ip:127.0.0.1";
+    // 每秒 10 个，间隔 100 毫秒，允许连续突发 3 个
+    private static final int PERMITS = 10;
+    private static final int PERIOD = 1;
+    private static final int BURST = 3;
+    private static final long INTERVAL = 100;
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private RateLimiter rateLimiter;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", EmbeddedRedisExtension.getPort()));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void reset() {
+        stringRedisTemplate.delete(RATE_LIMIT_KEY + KEY);
+        stringRedisTemplate.delete(RATE_LIMIT_KEY + KEY + ":other");
+        rateLimiter = new RateLimiter(stringRedisTemplate);
+    }
+
+    @Test
+    void burstIsAllowedThenRejected() {
+        for (int i = 0; i < BURST; i++) {
+            assertEquals(0, acquire(rateLimiter, KEY), "突发内的第 " + (i + 1) + " 个请求");
+        }
+        long waitMillis = acquire(rateLimiter, KEY);
+        assertTrue(waitMillis > 0 && waitMillis <= INTERVAL, "等待时间 " + waitMillis);
+        // Redis 里同样是拒绝，不只是本地的判断
+        assertTrue(acquire(new RateLimiter(stringRedisTemplate), KEY) > 0);
+    }
+
+    @Test
+    void oneIntervalRefillsOnePermit() throws InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            acquire(rateLimiter, KEY);
+        }
+        long waitMillis = acquire(rateLimiter, KEY);
+        assertTrue(waitMillis > 0);
+
+        // 等到给出的重试时间，补回一个许可，再下一个又被拒绝
+        Thread.sleep(waitMillis + 20);
+        assertEquals(0, acquire(rateLimiter, KEY));
+        assertTrue(acquire(rateLimiter, KEY) > 0);
+    }
+
+    @Test
+    void idleRestoresFullBurst() throws InterruptedException {
+        for (int i = 0; i < BURST; i++) {
+            acquire(rateLimiter, KEY);
+        }
+        assertTrue(acquire(rateLimiter, KEY) > 0);
+
+        // 空闲超过 burst 个间隔，TAT 回到当前时间，key 也已经过期
+        Thread.sleep(INTERVAL * BURST + 50);
+        assertFalse(stringRedisTemplate.hasKey(RATE_LIMIT_KEY + KEY));
+        RateLimiter fresh = new RateLimiter(stringRedisTemplate);
+        for (int i = 0; i < BURST; i++) {
+            assertEquals(0, acquire(fresh, KEY), "恢复后的第 " + (i + 1) + " 个请求");
+        }
+        assertTrue(acquire(fresh, KEY) > 0);
+    }
+
+    @Test
+    void keysAreLimitedIndependently() {
+        for (int i = 0; i < BURST; i++) {
+            acquire(rateLimiter, KEY);
+        }
+        assertTrue(acquire(rateLimiter, KEY) > 0);
+        assertEquals(0, acquire(rateLimiter, KEY + ":other"));
+    }
+
+    private static long acquire(RateLimiter limiter, String key) {
+        return limiter.tryAcquire(key, PERMITS, PERIOD, BURST);
+    }
+}
@@ -0,0 +1,253 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+import static com.hmdp.utils.SystemConstants.VOUCHER_ORDER_SHARDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 秒杀链路压测：N 个虚拟用户通过 HTTP 排队并抢购同一张秒杀券，
+ * 结束后校验没有超卖、一人一单、订单数等于库存，吞吐量和延迟分位数写到 target/loadtest 下的 JSON 文件。
+ * MySQL 用 H2（MySQL 模式）代替，Redis 用嵌入式 redis-server，限流器关闭，其余链路（排队、并发限制、锁）和线上一致。
+ * 延迟按结果分三类统计：并发限制快速失败（rejected）、还没排到（waiting）、真正执行了下单逻辑（order），只对 order 断言。
+ * 运行：mvn -P loadtest test -Dloadtest.users=2000 -Dloadtest.stock=200 -Dloadtest.threads=200 -Dloadtest.order.p50.ms=50 -Dloadtest.order.p99.ms=500
+ */
+@ExtendWith(EmbeddedRedisExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@DirtiesContext
+class SeckillLoadTest {
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 1000);
+    private static final int STOCK = Integer.getInteger("loadtest.stock", 100);
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 200);
+    // 单个用户最多重试的次数，避免压测卡死
+    private static final int MAX_ATTEMPTS = 2000;
+    // 真正进入下单逻辑的请求的 p50、p99 上限（毫秒）。默认值按单核机器上压测客户端和服务端抢 CPU 的情况设置，
+    // 只能挡住锁等待、连接池等待这类秒级的退化，在压测机上运行时用 -Dloadtest.order.p50.ms、-Dloadtest.order.p99.ms 收紧
+    private static final long ORDER_P50_MS = Long.getLong("loadtest.order.p50.ms", 1000);
+    private static final long ORDER_P99_MS = Long.getLong("loadtest.order.p99.ms", 15000);
+    private static final long VOUCHER_ID = 1L;
+
+
+    @Resource
+    private TestRestTemplate restTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    // 压测的是秒杀本身，按 IP 和用户的限流会把同一台机器发出的请求挡掉
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.port", EmbeddedRedisExtension::getPort);
+    }
+
+    @Test
+    void seckill() throws Exception {
+        // 1、准备秒杀券和登录用户
+        prepareVoucher();
+        List<String> tokens = prepareUsers();
+
+        // 2、所有虚拟用户并发排队、下单
+        // 延迟按结果分类统计：并发限制快速失败、还没排到、真正执行了下单逻辑的，混在一起的分位数没有意义
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>(USERS);
+        AtomicInteger succeeded = new AtomicInteger();
+        LatencyStats rejected = new LatencyStats();
+        LatencyStats waiting = new LatencyStats();
+        LatencyStats ordered = new LatencyStats();
+        long begin = System.nanoTime();
+        for (String token : tokens) {
+            futures.add(executor.submit(() -> {
+                runUser(token, succeeded, rejected, waiting, ordered);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long durationNanos = System.nanoTime() - begin;
+        executor.shutdown();
+
+        // 3、输出压测结果
+        writeReport(durationNanos, succeeded.get(), rejected, waiting, ordered);
+
+        // 4、校验正确性
+        Integer stock = jdbcTemplate.queryForObject(
+                "SELECT stock FROM tb_seckill_voucher WHERE voucher_id = ?", Integer.class, VOUCHER_ID);
+        String allOrders = allVoucherOrders();
+        Integer orders = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + allOrders + " WHERE voucher_id = ?", Integer.class, VOUCHER_ID);
+        Integer buyers = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT user_id) FROM " + allOrders + " WHERE voucher_id = ?", Integer.class, VOUCHER_ID);
+        // 分片号是 user_id % 分片数，订单id最低 4 位也是分片号
+        Integer misplaced = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + allOrders + " WHERE shard <> MOD(user_id, " + VOUCHER_ORDER_SHARDS + ")"
+                        + " OR shard <> BITAND(id, 15)", Integer.class);
+        assertTrue(stock >= 0, "超卖，剩余库存：" + stock);
+        assertEquals(orders, buyers, "存在一人多单");
+        assertEquals(Math.min(USERS, STOCK), orders, "订单数和库存不一致");
+        assertEquals(STOCK - orders, stock, "扣减的库存和订单数不一致");
+        assertEquals(orders, succeeded.get(), "下单成功的响应数和订单数不一致");
+        assertEquals(0, misplaced, "订单所在的分表和用户id、订单id里的分片号不一致");
+        assertEquals(USERS, ordered.count(), "有用户没有拿到下单结果");
+        assertTrue(ordered.percentile(0.50) <= ORDER_P50_MS,
+                "下单请求的 p50 " + ordered.percentile(0.50) + "ms 超过 " + ORDER_P50_MS + "ms");
+        assertTrue(ordered.percentile(0.99) <= ORDER_P99_MS,
+                "下单请求的 p99 " + ordered.percentile(0.99) + "ms 超过 " + ORDER_P99_MS + "ms");
+
+        // 4、按订单id查询：新订单按id里的分片号找到，只有下单的用户能查到
+        Map<String, Object> order = jdbcTemplate.queryForMap(
+                "SELECT id, user_id FROM " + allOrders + " ORDER BY id LIMIT 1");
+        long orderId = ((Number) order.get("id")).longValue();
+        long userId = ((Number) order.get("user_id")).longValue();
+        assertTrue(queryOrder(userId, orderId), "查不到自己的订单：" + orderId);
+        assertFalse(queryOrder(userId % USERS + 1, orderId), "查到了别人的订单：" + orderId);
+        // 5、分表前的旧订单id里没有分片号，按用户的分片找到：低 4 位超出分片数的、指向别的分片的
+        long legacyUserId = 1;
+        int userShard = (int) (legacyUserId % VOUCHER_ORDER_SHARDS);
+        long[] legacyIds = {1000L << 4 | 15, 1001L << 4 | (userShard + 1) % VOUCHER_ORDER_SHARDS};
+        for (int i = 0; i < legacyIds.length; i++) {
+            jdbcTemplate.update("INSERT INTO tb_voucher_order_" + userShard + " (id, user_id, voucher_id) VALUES (?, ?, ?)",
+                    legacyIds[i], legacyUserId, VOUCHER_ID + 1 + i);
+            assertTrue(queryOrder(legacyUserId, legacyIds[i]), "查不到旧订单：" + legacyIds[i]);
+        }
+    }
+
+    private boolean queryOrder(long userId, long orderId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("authorization", "loadtest" + userId);
+        Result result = restTemplate.exchange("/voucher-order/" + orderId, HttpMethod.GET,
+                new HttpEntity<>(headers), Result.class).getBody();
+        return result != null && Boolean.TRUE.equals(result.getSuccess());
+    }
+
+    // 所有订单分表，带上所在的分片号
+    private static String allVoucherOrders() {
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < VOUCHER_ORDER_SHARDS; i++) {
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(i).append(" AS shard, id, user_id, voucher_id FROM tb_voucher_order_").append(i);
+        }
+        return sql.append(") o").toString();
+    }
+
+    // 一个虚拟用户：取号，然后一直下单直到拿到明确的结果，每次下单请求的延迟按结果记到对应的分类里
+    private void runUser(String token, AtomicInteger succeeded,
+                         LatencyStats rejected, LatencyStats waiting, LatencyStats ordered) throws InterruptedException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("authorization", token);
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+        restTemplate.exchange("/voucher-order/queue/" + VOUCHER_ID, HttpMethod.POST, request, Result.class);
+
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            long start = System.nanoTime();
+            ResponseEntity<Result> response = restTemplate.exchange(
+                    "/voucher-order/seckill/" + VOUCHER_ID, HttpMethod.POST, request, Result.class);
+            long latency = System.nanoTime() - start;
+            Result result = response.getBody();
+            if (response.getStatusCodeValue() == 503 || response.getStatusCodeValue() == 429) {
+                // 并发限制、限流快速失败，按 Retry-After 加随机抖动后重试，和真实客户端一样不会立即重试
+                rejected.record(latency);
+                String retryAfter = response.getHeaders().getFirst("Retry-After");
+                long retryMillis = TimeUnit.SECONDS.toMillis(retryAfter == null ? 1 : Long.parseLong(retryAfter));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(retryMillis / 2, retryMillis + 1));
+            } else if (result != null && "还没有排到，请继续排队！".equals(result.getErrorMsg())) {
+                waiting.record(latency);
+                Thread.sleep(100);
+            } else {
+                ordered.record(latency);
+                if (result != null && Boolean.TRUE.equals(result.getSuccess())) {
+                    succeeded.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    private void prepareVoucher() {
+        jdbcTemplate.update("INSERT INTO tb_voucher (id, shop_id, title, pay_value, actual_value, type) VALUES (?, 1, '压测秒杀券', 100, 1000, 1)",
+                VOUCHER_ID);
+        jdbcTemplate.update("INSERT INTO tb_seckill_voucher (voucher_id, stock, waiting_room, begin_time, end_time) VALUES (?, ?, 1, ?, ?)",
+                VOUCHER_ID, STOCK, LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1));
+    }
+
+    // 直接写入登录 token，和登录接口写入的格式一致
+    private List<String> prepareUsers() {
+        List<String> tokens = new ArrayList<>(USERS);
+        for (int i = 1; i <= USERS; i++) {
+            tokens.add("loadtest" + i);
+        }
+        long ttl = TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 1; i <= USERS; i++) {
+                Map<String, String> user = new HashMap<>(4);
+                user.put("id", String.valueOf(i));
+                user.put("nickName", "压测用户_" + i);
+                String key = LOGIN_USER_KEY + tokens.get(i - 1);
+                conn.hMSet(key, user);
+                conn.expire(key, ttl);
+            }
+            return null;
+        });
+        return tokens;
+    }
+
+    private void writeReport(long durationNanos, int succeeded,
+                             LatencyStats rejected, LatencyStats waiting, LatencyStats ordered) throws IOException {
+        int requests = rejected.count() + waiting.count() + ordered.count();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", "sync");
+        report.put("users", USERS);
+        report.put("stock", STOCK);
+        report.put("threads", THREADS);
+        report.put("requests", requests);
+        report.put("succeeded", succeeded);
+        report.put("durationMs", LatencyStats.millis(durationNanos));
+        report.put("throughput", LatencyStats.throughput(requests, durationNanos));
+        Map<String, Object> latencyMs = new LinkedHashMap<>();
+        latencyMs.put("order", ordered.toMap());
+        latencyMs.put("waiting", waiting.toMap());
+        latencyMs.put("rejected", rejected.toMap());
+        report.put("latencyMs", latencyMs);
+        LatencyStats.writeReport("seckill", report);
+    }
+}
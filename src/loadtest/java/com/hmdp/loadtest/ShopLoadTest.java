@@ -0,0 +1,172 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.UvCounter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.UV_SHOP_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 商铺详情压测：同样的并发和请求，分别走同步查询和异步的 GET /shop/{id}，对比吞吐量和延迟。
+ * 每轮开始前清空商铺缓存，第一次访问每个商铺都会回源数据库，Tomcat 线程数调小，
+ * 这样同步接口等待 Redis、数据库时占着的线程会成为瓶颈。GET /shop/{id} 默认是同步的，压测里打开 hmdp.async.enabled。
+ * 结果写到 target/loadtest/shop-*.json。
+ * 运行：mvn -P loadtest test -Dloadtest.shop.requests=50000 -Dloadtest.threads=200 -Dloadtest.tomcat.threads=50
+ */
+@ExtendWith(EmbeddedRedisExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@Import(ShopLoadTest.SyncShopController.class)
+@DirtiesContext
+class ShopLoadTest {
+
+    private static final int SHOPS = Integer.getInteger("loadtest.shops", 1000);
+    private static final int REQUESTS = Integer.getInteger("loadtest.shop.requests", 20000);
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 200);
+    private static final int TOMCAT_THREADS = Integer.getInteger("loadtest.tomcat.threads", 50);
+
+    @Resource
+    private TestRestTemplate restTemplate;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.port", EmbeddedRedisExtension::getPort);
+        registry.add("server.tomcat.threads.max", () -> TOMCAT_THREADS);
+        registry.add("hmdp.async.enabled", () -> true);
+    }
+
+    /**
+     * 同步版本的商铺详情接口，只在压测里注册，和异步接口走同一个 Service、同一个缓存
+     */
+    @TestConfiguration
+    @RestController
+    static class SyncShopController {
+
+        @Resource
+        private IShopService shopService;
+
+        @Resource
+        private UvCounter uvCounter;
+
+        @GetMapping("/shop/sync/{id}")
+        public Result queryShopById(@PathVariable("id") Long id, HttpServletRequest request) {
+            uvCounter.record(UV_SHOP_KEY, id, request);
+            return shopService.queryById(id);
+        }
+    }
+
+    @Test
+    void syncVsAsync() throws Exception {
+        // 1、准备商铺，两种接口各预热一轮
+        prepareShops();
+        run("/shop/sync/", REQUESTS / 10);
+        run("/shop/", REQUESTS / 10);
+
+        // 2、分别压测同步和异步接口
+        Map<String, Object> sync = run("/shop/sync/", REQUESTS);
+        Map<String, Object> async = run("/shop/", REQUESTS);
+
+        // 3、输出对比结果
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("shops", SHOPS);
+        report.put("threads", THREADS);
+        report.put("tomcatThreads", TOMCAT_THREADS);
+        report.put("sync", sync);
+        report.put("async", async);
+        LatencyStats.writeReport("shop", report);
+
+        // 4、两种接口的每个请求都必须成功返回
+        assertEquals(0, sync.get("failed"), "同步接口有失败的请求");
+        assertEquals(0, async.get("failed"), "异步接口有失败的请求");
+    }
+
+    // 清空商铺缓存后，THREADS 个线程随机访问商铺，一共发 requests 个请求
+    private Map<String, Object> run(String path, int requests) throws Exception {
+        stringRedisTemplate.delete(LongStream.rangeClosed(1, SHOPS)
+                .mapToObj(id -> CACHE_SHOP_KEY + id).collect(Collectors.toList()));
+        LatencyStats stats = new LatencyStats();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>(THREADS);
+        long begin = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    long id = ThreadLocalRandom.current().nextLong(1, SHOPS + 1);
+                    long start = System.nanoTime();
+                    ResponseEntity<Result> response = restTemplate.getForEntity(path + id, Result.class);
+                    stats.record(System.nanoTime() - start);
+                    Result result = response.getBody();
+                    if (response.getStatusCodeValue() != 200 || result == null || !Boolean.TRUE.equals(result.getSuccess())) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long durationNanos = System.nanoTime() - begin;
+        executor.shutdown();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("durationMs", LatencyStats.millis(durationNanos));
+        result.put("throughput", LatencyStats.throughput(stats.count(), durationNanos));
+        result.put("failed", failed.get());
+        result.put("latencyMs", stats.toMap());
+        return result;
+    }
+
+    private void prepareShops() {
+        List<Object[]> rows = new ArrayList<>(SHOPS);
+        for (int i = 1; i <= SHOPS; i++) {
+            rows.add(new Object[]{i, "压测商铺_" + i, 1, "", "压测地址", 120.0, 30.0, 0, 0, 50});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO tb_shop (id, name, type_id, images, address, x, y, sold, comments, score)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+}
@@ -0,0 +1,129 @@
+-- 压测用的 H2（MySQL 模式）表结构，只包含秒杀链路、商铺详情和启动时定时任务会访问的表
+
+CREATE TABLE IF NOT EXISTS tb_blog (
+  id bigint NOT NULL AUTO_INCREMENT,
+  shop_id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  title varchar(255) NOT NULL,
+  images varchar(2048) NOT NULL,
+  content varchar(2048) NOT NULL,
+  liked int DEFAULT 0,
+  comments int DEFAULT NULL,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_follow (
+  id bigint NOT NULL AUTO_INCREMENT,
+  user_id bigint NOT NULL,
+  follow_user_id bigint NOT NULL,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id),
+  UNIQUE (user_id, follow_user_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_shop (
+  id bigint NOT NULL AUTO_INCREMENT,
+  name varchar(128) NOT NULL,
+  type_id bigint NOT NULL,
+  images varchar(1024) NOT NULL,
+  area varchar(128) DEFAULT NULL,
+  address varchar(255) NOT NULL,
+  x double NOT NULL,
+  y double NOT NULL,
+  avg_price bigint DEFAULT NULL,
+  sold int NOT NULL,
+  comments int NOT NULL,
+  score int NOT NULL,
+  open_hours varchar(32) DEFAULT NULL,
+  create_time timestamp NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time timestamp NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher (
+  id bigint NOT NULL AUTO_INCREMENT,
+  shop_id bigint DEFAULT NULL,
+  title varchar(255) NOT NULL,
+  sub_title varchar(255) DEFAULT NULL,
+  rules varchar(1024) DEFAULT NULL,
+  pay_value bigint NOT NULL,
+  actual_value bigint NOT NULL,
+  type tinyint NOT NULL DEFAULT 0,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_seckill_voucher (
+  voucher_id bigint NOT NULL,
+  stock int NOT NULL,
+  waiting_room tinyint NOT NULL DEFAULT 0,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  begin_time timestamp NOT NULL,
+  end_time timestamp NOT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (voucher_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher_order_0 (
+  id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  voucher_id bigint NOT NULL,
+  pay_type tinyint NOT NULL DEFAULT 1,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  pay_time timestamp NULL DEFAULT NULL,
+  use_time timestamp NULL DEFAULT NULL,
+  refund_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id),
+  UNIQUE (user_id, voucher_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher_order_1 (
+  id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  voucher_id bigint NOT NULL,
+  pay_type tinyint NOT NULL DEFAULT 1,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  pay_time timestamp NULL DEFAULT NULL,
+  use_time timestamp NULL DEFAULT NULL,
+  refund_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id),
+  UNIQUE (user_id, voucher_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher_order_2 (
+  id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  voucher_id bigint NOT NULL,
+  pay_type tinyint NOT NULL DEFAULT 1,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  pay_time timestamp NULL DEFAULT NULL,
+  use_time timestamp NULL DEFAULT NULL,
+  refund_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id),
+  UNIQUE (user_id, voucher_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher_order_3 (
+  id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  voucher_id bigint NOT NULL,
+  pay_type tinyint NOT NULL DEFAULT 1,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  pay_time timestamp NULL DEFAULT NULL,
+  use_time timestamp NULL DEFAULT NULL,
+  refund_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id),
+  UNIQUE (user_id, voucher_id)
+);
@@ -0,0 +1,59 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.DataSourceRouter;
+import com.hmdp.utils.ReadWriteRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+
+/**
+ * 读写分离：主库沿用 spring.datasource 的配置，只读副本在 hmdp.datasource.replica 下配置，没有配置时读写都走主库。
+ * 两个连接池都不注册成单独的 bean，否则 Spring Boot 的数据源初始化会和路由数据源互相依赖
+ */
+@Configuration
+public class DataSourceConfig {
+
+    private static final String REPLICA_PREFIX = "hmdp.datasource.replica";
+
+    @Resource
+    private Environment environment;
+
+    @Bean
+    public DataSourceRouter dataSourceRouter(StringRedisTemplate stringRedisTemplate,
+                                             @Value("${hmdp.datasource.max-lag-seconds:3}") long maxLagSeconds,
+                                             @Value("${hmdp.datasource.sticky-seconds:5}") long stickySeconds) {
+        return new DataSourceRouter(stringRedisTemplate, createReplica(), maxLagSeconds, stickySeconds);
+    }
+
+    @Bean
+    @Primary
+    public ReadWriteRoutingDataSource dataSource(DataSourceProperties properties, DataSourceRouter router) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+        return new ReadWriteRoutingDataSource(primary, router.getReplicaDataSource(), router);
+    }
+
+    private HikariDataSource createReplica() {
+        if (!environment.containsProperty(REPLICA_PREFIX + ".jdbc-url")) {
+            return null;
+        }
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        Binder.get(environment).bind(REPLICA_PREFIX, Bindable.ofInstance(replica));
+        replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+        return replica;
+    }
+}
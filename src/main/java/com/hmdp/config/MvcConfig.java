@@ -1,19 +1,64 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdaptiveConcurrencyLimiter;
+import com.hmdp.utils.ConcurrencyLimitInterceptor;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
+import com.hmdp.utils.RateLimiter;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.RequestMetricsInterceptor;
+import com.hmdp.utils.RequestTracer;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedTokenManager;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
 
+import static com.hmdp.utils.SystemConstants.*;
+
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SessionCache sessionCache;
+
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @Resource
+    private RequestTracer requestTracer;
+
+    @Bean
+    public AdaptiveConcurrencyLimiter seckillConcurrencyLimiter() {
+        return new AdaptiveConcurrencyLimiter(SECKILL_INITIAL_CONCURRENCY, SECKILL_MIN_CONCURRENCY, SECKILL_MAX_CONCURRENCY);
+    }
+
+    /**
+     * 异步接口缓存未命中时查询数据库用的线程池，有界，数据库变慢时不会无限堆积线程
+     */
+    @Bean
+    public ThreadPoolTaskExecutor asyncDbExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ASYNC_DB_POOL_SIZE);
+        executor.setMaxPoolSize(ASYNC_DB_POOL_SIZE);
+        executor.setQueueCapacity(ASYNC_DB_QUEUE_CAPACITY);
+        executor.setThreadNamePrefix("async-db-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(ASYNC_REQUEST_TIMEOUT);
+        configurer.setTaskExecutor(asyncDbExecutor());
+    }
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -30,7 +75,17 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/login"
                 ).order(1);
 
+        // 限流拦截器，只处理加了 @RateLimit 的接口，放在登录拦截器之后，可以按用户限流
+        registry.addInterceptor(new RateLimitInterceptor(rateLimiter)).addPathPatterns("/**").order(2);
+
+        // 秒杀接口的自适应并发限制，超出上限的请求快速失败，放在限流之后，被限流的请求不占并发名额
+        registry.addInterceptor(new ConcurrencyLimitInterceptor(seckillConcurrencyLimiter()))
+                .addPathPatterns("/voucher-order/seckill/**").order(3);
+
         // 刷新redis有效期，拦截一切路径
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionCache, signedTokenManager)).addPathPatterns("/**").order(0);
+
+        // 统计每个请求的 Redis 命令数并按采样追踪调用明细，放在最前面，刷新 token 执行的命令也计入
+        registry.addInterceptor(new RequestMetricsInterceptor(requestTracer)).addPathPatterns("/**").order(-1);
     }
 }
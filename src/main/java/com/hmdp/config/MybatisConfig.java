@@ -2,16 +2,42 @@ package com.hmdp.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.utils.DataSourceRouter;
+import com.hmdp.utils.SqlTraceInterceptor;
+import com.hmdp.utils.VoucherOrderSharding;
+import com.hmdp.utils.WriteTrackingInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+
 @Configuration
 public class MybatisConfig {
     @Bean
     public MybatisPlusInterceptor mybatisPlusInterceptor() {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        // 订单表按用户分表，表名替换要在分页之前
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(
+                Collections.singletonMap(VoucherOrderSharding.TABLE_NAME, new VoucherOrderSharding())));
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
+
+    /**
+     * 记录被追踪请求执行的 SQL
+     */
+    @Bean
+    public SqlTraceInterceptor sqlTraceInterceptor() {
+        return new SqlTraceInterceptor();
+    }
+
+    /**
+     * 记录用户的写操作，读写分离时让用户能读到自己刚写的数据
+     */
+    @Bean
+    public WriteTrackingInterceptor writeTrackingInterceptor(DataSourceRouter router) {
+        return new WriteTrackingInterceptor(router);
+    }
 }
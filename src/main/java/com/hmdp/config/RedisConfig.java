@@ -0,0 +1,86 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.MeteredStringRedisTemplate;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedTokenManager;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.TimeoutOptions;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKE_CHANNEL;
+import static com.hmdp.utils.SystemConstants.REDIS_REQUEST_QUEUE_SIZE;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * 普通命令都走共享的那一条连接，多个线程的命令在这条连接上自动流水线发送；
+     * 连接断开时快速失败，排队的命令有上限，超时由 spring.redis.timeout 控制，不会在断线期间无限堆积
+     */
+    @Bean
+    public LettuceClientConfigurationBuilderCustomizer lettuceClientOptionsCustomizer() {
+        return builder -> builder.clientOptions(ClientOptions.builder()
+                .autoReconnect(true)
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .requestQueueSize(REDIS_REQUEST_QUEUE_SIZE)
+                .timeoutOptions(TimeoutOptions.enabled())
+                .build());
+    }
+
+    /**
+     * 连接池只给 pipeline、事务和阻塞命令用：
+     * 1、共享连接启动时就建立，第一个请求不用等待建连
+     * 2、pipeline 里的命令攒到执行完才一次性写出
+     */
+    @Bean
+    public static BeanPostProcessor lettuceConnectionFactoryPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LettuceConnectionFactory) {
+                    LettuceConnectionFactory factory = (LettuceConnectionFactory) bean;
+                    factory.setShareNativeConnection(true);
+                    factory.setEagerInitialization(true);
+                    factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * 替换自动配置的 StringRedisTemplate，统计执行的 Redis 命令数
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return new MeteredStringRedisTemplate(connectionFactory);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory connectionFactory, SessionCache sessionCache, SignedTokenManager signedTokenManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 其他节点登出时，失效本节点的登录用户缓存
+        container.addMessageListener(
+                (message, pattern) -> sessionCache.evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_INVALIDATE_CHANNEL));
+        // 其他节点吊销了某个用户的签名 token
+        container.addMessageListener(
+                (message, pattern) -> signedTokenManager.onRevoked(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(LOGIN_REVOKE_CHANNEL));
+        return container;
+    }
+}
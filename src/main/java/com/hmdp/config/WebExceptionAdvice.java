@@ -1,17 +1,22 @@
 package com.hmdp.config;
 
 import com.hmdp.dto.Result;
+import com.hmdp.utils.ConcurrencyLimitInterceptor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.servlet.http.HttpServletRequest;
+
 @Slf4j
 @RestControllerAdvice
 public class WebExceptionAdvice {
 
     @ExceptionHandler(RuntimeException.class)
-    public Result handleRuntimeException(RuntimeException e) {
+    public Result handleRuntimeException(RuntimeException e, HttpServletRequest request) {
         log.error(e.toString(), e);
+        // 响应仍然是 200，标记一下让并发限制按失败统计
+        request.setAttribute(ConcurrencyLimitInterceptor.SERVER_ERROR_ATTRIBUTE, e);
         return Result.fail("服务器异常");
     }
 }
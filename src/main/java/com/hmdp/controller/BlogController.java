@@ -5,16 +5,18 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
-import com.hmdp.service.IUserService;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UvCounter;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.UV_BLOG_KEY;
+
 /**
  * <p>
  * 前端控制器
@@ -29,8 +31,9 @@ public class BlogController {
 
     @Resource
     private IBlogService blogService;
+
     @Resource
-    private IUserService userService;
+    private UvCounter uvCounter;
 
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
@@ -38,17 +41,28 @@ public class BlogController {
         UserDTO user = UserHolder.getUser();
         blog.setUserId(user.getId());
         // 保存探店博文
-        blogService.save(blog);
-        // 返回id
-        return Result.ok(blog.getId());
+        return blogService.saveBlog(blog);
+    }
+
+    @GetMapping("/{id}")
+    public Result queryBlogById(@PathVariable("id") Long id, HttpServletRequest request) {
+        uvCounter.record(UV_BLOG_KEY, id, request);
+        return blogService.queryBlogById(id);
+    }
+
+    @GetMapping("/uv/{id}")
+    public Result queryBlogUv(@PathVariable("id") Long id) {
+        return Result.ok(uvCounter.count(UV_BLOG_KEY, id));
     }
 
     @PutMapping("/like/{id}")
     public Result likeBlog(@PathVariable("id") Long id) {
-        // 修改点赞数量
-        blogService.update()
-                .setSql("liked = liked + 1").eq("id", id).update();
-        return Result.ok();
+        return blogService.likeBlog(id);
+    }
+
+    @GetMapping("/likes/{id}")
+    public Result queryBlogLikes(@PathVariable("id") Long id) {
+        return blogService.queryBlogLikes(id);
     }
 
     @GetMapping("/of/me")
@@ -65,19 +79,21 @@ public class BlogController {
 
     @GetMapping("/hot")
     public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog ->{
-            Long userId = blog.getUserId();
-            User user = userService.getById(userId);
-            blog.setName(user.getNickName());
-            blog.setIcon(user.getIcon());
-        });
-        return Result.ok(records);
+        return blogService.queryHotBlog(current);
+    }
+
+    /**
+     * 滚动分页查询关注的人发布的博文
+     *
+     * @param max    上一页最小的时间戳，第一页传当前时间
+     * @param offset 上一页中与最小时间戳相同的元素个数，第一页传 0
+     * @return ScrollResult
+     */
+    @GetMapping("/of/follow")
+    public Result queryBlogOfFollow(
+            @RequestParam("lastId") Long max,
+            @RequestParam(value = "offset", defaultValue = "0") Integer offset
+    ) {
+        return blogService.queryBlogOfFollow(max, offset);
     }
 }
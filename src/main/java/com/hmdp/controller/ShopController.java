@@ -6,10 +6,16 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.ReplicaRead;
 import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UvCounter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+
+import static com.hmdp.utils.RedisConstants.UV_SHOP_KEY;
 
 /**
  * <p>
@@ -26,15 +32,34 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private UvCounter uvCounter;
+
+    @Value("${hmdp.async.enabled:false}")
+    private boolean asyncEnabled;
+
     /**
      * 根据id查询商铺信息
      *
      * @param id 商铺id
-     * @return 商铺详情数据
+     * @return 商铺详情数据，开启异步查询时是 CompletableFuture
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryById(id);
+    public Object queryShopById(@PathVariable("id") Long id, HttpServletRequest request) {
+        uvCounter.record(UV_SHOP_KEY, id, request);
+        // 异步查询只在 Redis、数据库变慢、Tomcat 线程不够用时才划算，默认同步查询
+        return asyncEnabled ? shopService.queryByIdAsync(id) : shopService.queryById(id);
+    }
+
+    /**
+     * 查询商铺的 UV
+     *
+     * @param id 商铺id
+     * @return 当天、近 7 天、近 30 天的 UV
+     */
+    @GetMapping("/uv/{id}")
+    public Result queryShopUv(@PathVariable("id") Long id) {
+        return Result.ok(uvCounter.count(UV_SHOP_KEY, id));
     }
 
     /**
@@ -69,6 +94,7 @@ public class ShopController {
      * @param current 页码
      * @return 商铺列表
      */
+    @ReplicaRead
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
@@ -89,6 +115,7 @@ public class ShopController {
      * @param current 页码
      * @return 商铺列表
      */
+    @ReplicaRead
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IShopTypeService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -23,8 +24,12 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    @Value("${hmdp.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    // 开启异步查询时返回 CompletableFuture，见 hmdp.async.enabled
     @GetMapping("list")
-    public Result queryTypeList() {
-        return typeService.queryType();
+    public Object queryTypeList() {
+        return asyncEnabled ? typeService.queryTypeAsync() : typeService.queryType();
     }
 }
@@ -5,8 +5,10 @@ import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.UserInfo;
+import com.hmdp.service.ISignService;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -33,10 +35,15 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private ISignService signService;
+
     /**
      * 发送手机验证码
      */
     @PostMapping("code")
+    @RateLimit(name = "code:phone", permits = 1, period = 60, by = RateLimit.Dimension.PARAM, param = "phone")
+    @RateLimit(name = "code:ip", permits = 20, period = 3600, burst = 5)
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
         // 发送短信验证码并保存验证码
         return userService.sendCode(phone, session);
@@ -48,6 +55,7 @@ public class UserController {
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
      */
     @PostMapping("/login")
+    @RateLimit(name = "login:ip", permits = 10, period = 60, burst = 10)
     public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session) {
         // 实现登录功能
         return userService.login(loginForm, session);
@@ -59,9 +67,18 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout() {
-        // TODO 实现登出功能
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader("authorization") String token) {
+        return userService.logout(token);
+    }
+
+    /**
+     * 吊销某个用户的所有会话，仅管理员可用
+     *
+     * @return 被吊销的 token 数量
+     */
+    @PostMapping("/sessions/revoke/{id}")
+    public Result revokeSessions(@PathVariable("id") Long userId) {
+        return userService.revokeSessions(userId);
     }
 
     @GetMapping("/me")
@@ -84,4 +101,28 @@ public class UserController {
         // 返回
         return Result.ok(info);
     }
+
+    /**
+     * 签到
+     */
+    @PostMapping("/sign")
+    public Result sign() {
+        return signService.sign();
+    }
+
+    /**
+     * 本月签到天数
+     */
+    @GetMapping("/sign/count")
+    public Result signCount() {
+        return signService.signCount();
+    }
+
+    /**
+     * 截止今天的连续签到天数
+     */
+    @GetMapping("/sign/streak")
+    public Result signStreak() {
+        return signService.signStreak();
+    }
 }
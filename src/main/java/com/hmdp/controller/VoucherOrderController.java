@@ -3,6 +3,8 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RateLimit;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -26,8 +28,42 @@ public class VoucherOrderController {
     private IVoucherOrderService voucherOrderService;
 
     @PostMapping("seckill/{id}")
+    @RateLimit(name = "seckill:user", permits = 1, period = 1, burst = 3, by = RateLimit.Dimension.USER)
+    @RateLimit(name = "seckill:ip", permits = 50, period = 1, burst = 100)
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
 
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 秒杀排队取号
+     */
+    @PostMapping("queue/{id}")
+    public Result joinSeckillQueue(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.joinSeckillQueue(voucherId);
+    }
+
+    /**
+     * 查询排队状态
+     */
+    @GetMapping("queue/{id}")
+    public Result querySeckillQueue(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.querySeckillQueue(voucherId);
+    }
+
+    /**
+     * 查询自己在这张优惠券上的下单状态，秒杀后轮询用
+     */
+    @GetMapping("status/{id}")
+    public Result queryOrderStatus(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.queryOrderStatus(voucherId);
+    }
+
+    /**
+     * 查询自己的订单
+     */
+    @GetMapping("{id}")
+    public Result queryOrderById(@PathVariable("id") Long orderId) {
+        return voucherOrderService.queryOrderById(orderId);
+    }
 }
@@ -0,0 +1,47 @@
+package com.hmdp.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 收件箱归档，保存从 Redis 收件箱中裁剪下来的旧消息
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("tb_feed_archive")
+public class FeedArchive implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 收件箱所属的用户id
+     */
+    private Long userId;
+
+    /**
+     * 博文id
+     */
+    private Long blogId;
+
+    /**
+     * 推送时间，毫秒时间戳
+     */
+    private Long pushTime;
+
+
+}
@@ -37,6 +37,11 @@ public class SeckillVoucher implements Serializable {
      */
     private Integer stock;
 
+    /**
+     * 是否需要先排队再下单
+     */
+    private Boolean waitingRoom;
+
     /**
      * 创建时间
      */
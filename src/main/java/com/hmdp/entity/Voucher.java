@@ -78,6 +78,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 是否需要先排队再下单
+     */
+    @TableField(exist = false)
+    private Boolean waitingRoom;
+
     /**
      * 生效时间
      */
@@ -2,6 +2,8 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 
 /**
  * <p>
@@ -13,4 +15,6 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    @Update("UPDATE tb_blog SET liked = GREATEST(CAST(liked AS SIGNED) + #{delta}, 0) WHERE id = #{id}")
+    int incrLiked(@Param("id") Long id, @Param("delta") Long delta);
 }
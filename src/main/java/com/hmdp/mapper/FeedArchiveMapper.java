@@ -0,0 +1,22 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.FeedArchive;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface FeedArchiveMapper extends BaseMapper<FeedArchive> {
+
+    @Insert("<script>" +
+            "INSERT IGNORE INTO tb_feed_archive (user_id, blog_id, push_time) VALUES " +
+            "<foreach collection='list' item='a' separator=','>(#{a.userId}, #{a.blogId}, #{a.pushTime})</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<FeedArchive> list);
+}
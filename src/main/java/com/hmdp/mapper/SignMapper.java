@@ -0,0 +1,23 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.Sign;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface SignMapper extends BaseMapper<Sign> {
+
+    @Insert("<script>" +
+            "INSERT INTO tb_sign (user_id, `year`, `month`, bits) VALUES " +
+            "<foreach collection='list' item='s' separator=','>(#{s.userId}, #{s.year}, #{s.month}, #{s.bits})</foreach>" +
+            " ON DUPLICATE KEY UPDATE bits = VALUES(bits)" +
+            "</script>")
+    int upsertBatch(@Param("list") List<Sign> list);
+}
@@ -0,0 +1,14 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.FeedArchive;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface IFeedArchiveService extends IService<FeedArchive> {
+
+    void rebuildInbox(Long userId, long since);
+}
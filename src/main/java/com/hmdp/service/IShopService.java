@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  * 服务类
@@ -16,5 +18,7 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    CompletableFuture<Result> queryByIdAsync(Long id);
+
     Result update(Shop shop);
 }
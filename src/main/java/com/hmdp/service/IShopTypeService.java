@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  * 服务类
@@ -14,4 +16,6 @@ import com.hmdp.entity.ShopType;
  */
 public interface IShopTypeService extends IService<ShopType> {
     Result queryType();
+
+    CompletableFuture<Result> queryTypeAsync();
 }
@@ -0,0 +1,19 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Sign;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ISignService extends IService<Sign> {
+
+    Result sign();
+
+    Result signCount();
+
+    Result signStreak();
+}
@@ -17,4 +17,12 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result seckillVoucher(Long voucherId);
 
     Result createVoucherOrder(Long voucherId);
+
+    Result joinSeckillQueue(Long voucherId);
+
+    Result querySeckillQueue(Long voucherId);
+
+    Result queryOrderById(Long orderId);
+
+    Result queryOrderStatus(Long voucherId);
 }
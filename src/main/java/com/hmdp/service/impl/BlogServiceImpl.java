@@ -1,10 +1,56 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IFeedArchiveService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.RedisBatch;
+import com.hmdp.utils.ReplicaRead;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.FEED_INACTIVE_DAYS;
+import static com.hmdp.utils.SystemConstants.FEED_INBOX_MAX_SIZE;
 
 /**
  * <p>
@@ -14,7 +60,529 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    // 热度衰减系数，score = (liked + 1) / (小时数 + 2) ^ GRAVITY
+    private static final double HOT_BLOG_GRAVITY = 1.8;
+    // 排行榜最多保留的博文数量
+    private static final int HOT_BLOG_MAX_SIZE = 1000;
+    // 重算热度时每批从数据库读取的博文数量
+    private static final int HOT_BLOG_BATCH_SIZE = 1000;
+    // 点赞数刷库时每批执行的 UPDATE 数量
+    private static final int LIKED_FLUSH_BATCH_SIZE = 500;
+
+    // 粉丝数超过这个值的作者不再推送到粉丝收件箱，改由粉丝读取时拉取
+    private static final int FEED_PUSH_MAX_FANS = 5000;
+    // 推送时每批写入的粉丝收件箱数量
+    private static final int FEED_PUSH_BATCH_SIZE = 1000;
+
+    // 推送任务记录在 Redis 里超过这个时间还没完成（被拒绝、失败或进程退出），由定时任务重新推送
+    private static final long FEED_PUSH_RETRY_DELAY_MILLIS = 60 * 1000;
+    // 定时任务每次最多重新推送的博文数量
+    private static final int FEED_PUSH_RETRY_BATCH_SIZE = 100;
+
+    // 推送任务排满时直接拒绝，不占用发布博文的请求线程，推送记录留在 Redis 里由定时任务重新推送
+    private static final ExecutorService FEED_PUSH_EXECUTOR = new ThreadPoolExecutor(
+            2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(10000),
+            new NamedThreadFactory("feed-push-", true),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    private static final DefaultRedisScript<Long> FEED_TOUCH_SCRIPT;
+    private static final DefaultRedisScript<Long> HOT_RANK_SWAP_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        FEED_TOUCH_SCRIPT = new DefaultRedisScript<>();
+        FEED_TOUCH_SCRIPT.setLocation(new ClassPathResource("feed_touch.lua"));
+        FEED_TOUCH_SCRIPT.setResultType(Long.class);
+        HOT_RANK_SWAP_SCRIPT = new DefaultRedisScript<>();
+        HOT_RANK_SWAP_SCRIPT.setLocation(new ClassPathResource("hot_rank_swap.lua"));
+        HOT_RANK_SWAP_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private IFeedArchiveService feedArchiveService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisBatch redisBatch;
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 1、保存探店博文
+        save(blog);
+        // 2、新博文直接进入排行榜，热度按 0 赞、0 小时计算
+        long createSecond = System.currentTimeMillis() / 1000;
+        stringRedisTemplate.opsForHash().put(BLOG_HOT_TIME_KEY, blog.getId().toString(), String.valueOf(createSecond));
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), hotScore(0, 0));
+        // 3、写入作者自己的发件箱，大V的粉丝读取时从这里拉取
+        Long userId = blog.getUserId();
+        String blogId = blog.getId().toString();
+        long timestamp = System.currentTimeMillis();
+        String outboxKey = FEED_OUTBOX_KEY + userId;
+        stringRedisTemplate.opsForZSet().add(outboxKey, blogId, timestamp);
+        stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -FEED_INBOX_MAX_SIZE - 1);
+        // 4、异步推送到粉丝的收件箱，发布接口不等待推送完成；
+        // 先记下推送任务，推送完成后删除，没完成的由 retryFeedPush 重新推送
+        String pushTask = userId + ":" + blogId + ":" + timestamp;
+        stringRedisTemplate.opsForList().rightPush(FEED_PUSH_PENDING_KEY, pushTask);
+        try {
+            FEED_PUSH_EXECUTOR.execute(() -> {
+                try {
+                    pushToFans(userId, blogId, timestamp);
+                    stringRedisTemplate.opsForList().remove(FEED_PUSH_PENDING_KEY, 1, pushTask);
+                } catch (Exception e) {
+                    log.error("推送博文到粉丝收件箱失败，等待重新推送，blogId：{}", blogId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Metrics.counter("hmdp.feed.push.rejected").increment();
+            log.warn("推送任务已满，等待重新推送，blogId：{}", blogId);
+        }
+        // 5、返回id
+        return Result.ok(blog.getId());
+    }
+
+    /**
+     * 定时重新推送超时没有完成的推送任务：推送线程池排满被拒绝的、推送失败的、进程退出时还没推送的。
+     * 重复推送只是把同一条消息再写一次收件箱，不会产生重复的消息
+     */
+    @Scheduled(fixedDelay = 10 * 1000)
+    public void retryFeedPush() {
+        SimpleRedisLock lock = new SimpleRedisLock("feed:push:retry", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            // 1、按记录的先后取出一批推送任务
+            List<String> tasks = stringRedisTemplate.opsForList().range(FEED_PUSH_PENDING_KEY, 0, FEED_PUSH_RETRY_BATCH_SIZE - 1);
+            if (CollUtil.isEmpty(tasks)) {
+                return;
+            }
+            long deadline = System.currentTimeMillis() - FEED_PUSH_RETRY_DELAY_MILLIS;
+            for (String task : tasks) {
+                // 2、还在推送线程池里排队的任务先不管
+                List<String> parts = StrUtil.split(task, ':');
+                long timestamp = Long.parseLong(parts.get(2));
+                if (timestamp > deadline) {
+                    continue;
+                }
+                // 3、重新推送，推送完成后删除记录，失败的留到下一次
+                pushToFans(Long.valueOf(parts.get(0)), parts.get(1), timestamp);
+                stringRedisTemplate.opsForList().remove(FEED_PUSH_PENDING_KEY, 1, task);
+                Metrics.counter("hmdp.feed.push.retried").increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pushToFans(Long userId, String blogId, long timestamp) {
+        // 1、粉丝太多的作者只记入大V集合，由粉丝读取时拉取
+        String fansKey = FANS_KEY + userId;
+        Long fansCount = stringRedisTemplate.opsForSet().size(fansKey);
+        if (fansCount != null && fansCount > FEED_PUSH_MAX_FANS) {
+            stringRedisTemplate.opsForSet().add(FEED_BIG_V_KEY, userId.toString());
+            return;
+        }
+        stringRedisTemplate.opsForSet().remove(FEED_BIG_V_KEY, userId.toString());
+        // 2、用 SSCAN 分批读取粉丝，每批用一次 pipeline 写入所有粉丝的收件箱
+        ScanOptions options = ScanOptions.scanOptions().count(FEED_PUSH_BATCH_SIZE).build();
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(fansKey, options)) {
+            List<String> fans = new ArrayList<>(FEED_PUSH_BATCH_SIZE);
+            while (cursor.hasNext()) {
+                fans.add(cursor.next());
+                if (fans.size() == FEED_PUSH_BATCH_SIZE || !cursor.hasNext()) {
+                    pushToActiveFans(fans, blogId, timestamp);
+                    fans.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 不活跃的粉丝没有收件箱，下次访问时会从发件箱拉取重建，这里不再推送
+    private void pushToActiveFans(List<String> fans, String blogId, long timestamp) {
+        List<Object> lastActives = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            fans.forEach(fanId -> conn.zScore(FEED_ACTIVE_KEY, fanId));
+            return null;
+        });
+        double deadline = timestamp - TimeUnit.DAYS.toMillis(FEED_INACTIVE_DAYS);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < fans.size(); i++) {
+                Double lastActive = (Double) lastActives.get(i);
+                if (lastActive != null && lastActive >= deadline) {
+                    conn.zAdd(FEED_KEY + fans.get(i), timestamp, blogId);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Result queryBlogById(Long id) {
+        // 1、查询博文
+        Blog blog = getById(id);
+        if (blog == null) {
+            return Result.fail("博文不存在！");
+        }
+        // 2、查询作者及点赞信息
+        List<Blog> blogs = Collections.singletonList(blog);
+        fillBlogUsers(blogs);
+        fillBlogLikes(blogs);
+        return Result.ok(blog);
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        // 1、判断博文是否存在，只按主键查 id，不锁行
+        if (query().select("id").eq("id", id).one() == null) {
+            return Result.fail("博文不存在！");
+        }
+        // 2、获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 3、执行lua脚本，原子地切换点赞状态，并记录待刷库的点赞增量、更新热度
+        stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BLOG_LIKED_DELTA_KEY, BLOG_HOT_KEY, BLOG_HOT_TIME_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString(), String.valueOf(HOT_BLOG_GRAVITY)
+        );
+        return Result.ok();
+    }
+
+    @Override
+    public Result queryBlogLikes(Long id) {
+        // 1、查询最早点赞的 5 个用户 zrange key 0 4
+        Set<String> top5 = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, 4);
+        if (CollUtil.isEmpty(top5)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2、批量查询用户，并按点赞先后排序
+        List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, User> userMap = userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<UserDTO> userDTOS = ids.stream()
+                .map(userMap::get)
+                .filter(Objects::nonNull)
+                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .collect(Collectors.toList());
+        return Result.ok(userDTOS);
+    }
+
+    @Override
+    @ReplicaRead
+    public Result queryHotBlog(Integer current) {
+        // 1、从排行榜里按页取出博文id，ZREVRANGE key start end
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        long end = start + SystemConstants.MAX_PAGE_SIZE - 1;
+        Set<String> idSet = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, end);
+        if (CollUtil.isEmpty(idSet)) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = idSet.stream().map(Long::valueOf).collect(Collectors.toList());
+
+        // 2、批量查询博文，并按照排行榜的顺序排列
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> blogs = ids.stream().map(blogMap::get).filter(Objects::nonNull).collect(Collectors.toList());
+        if (blogs.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+
+        // 3、批量查询作者及点赞信息
+        fillBlogUsers(blogs);
+        fillBlogLikes(blogs);
+        return Result.ok(blogs);
+    }
+
+    @Override
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        // 1、获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        int count = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 每个来源都要取 offset + count 条，合并后跳过 offset 条才能保证不漏
+        long fetch = offset + count;
+
+        // 2、一次 pipeline 完成：记录活跃时间并取回上一次的活跃时间、
+        // 查询收件箱 ZREVRANGEBYSCORE key max 0 WITHSCORES LIMIT 0 fetch、查询关注的大V SINTER follows:{userId} feed:bigv、
+        // 查询收件箱归档到的时间 HGET feed:archived {userId}
+        String inboxKey = FEED_KEY + userId;
+        List<Object> results = redisBatch.pipeline(conn -> {
+            redisBatch.evalSha(conn, FEED_TOUCH_SCRIPT, Collections.singletonList(FEED_ACTIVE_KEY),
+                    userId.toString(), String.valueOf(System.currentTimeMillis()));
+            conn.zRevRangeByScoreWithScores(inboxKey, 0, max, 0, fetch);
+            conn.sInter(FOLLOWS_KEY + userId, FEED_BIG_V_KEY);
+            conn.hGet(FEED_ARCHIVED_KEY, userId.toString());
+        });
+        long lastActive = (Long) results.get(0);
+        @SuppressWarnings("unchecked")
+        Set<ZSetOperations.TypedTuple<String>> inbox = (Set<ZSetOperations.TypedTuple<String>>) results.get(1);
+        @SuppressWarnings("unchecked")
+        Set<String> bigVs = (Set<String>) results.get(2);
+        String archivedUpTo = (String) results.get(3);
+
+        // 3、超过期限没有访问的用户，推送时被跳过了，收件箱也可能已被删除，
+        // 从关注的人的发件箱拉取上次访问之后的博文合并进收件箱，再重新查询
+        if (lastActive < System.currentTimeMillis() - TimeUnit.DAYS.toMillis(FEED_INACTIVE_DAYS)) {
+            feedArchiveService.rebuildInbox(userId, Math.max(lastActive, 0));
+            inbox = stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(inboxKey, 0, max, 0, fetch);
+        }
+        List<ZSetOperations.TypedTuple<String>> tuples = new ArrayList<>();
+        if (inbox != null) {
+            tuples.addAll(inbox);
+        }
+        // 收件箱被裁剪过、又不够一页，说明已经翻到了被裁剪的旧消息，去归档表里查；
+        // 没有被裁剪过的收件箱就是全部消息，关注少的用户和最后一页都不查库
+        if (archivedUpTo != null && tuples.size() < fetch) {
+            feedArchiveService.query()
+                    .eq("user_id", userId).le("push_time", Math.min(max, Long.parseLong(archivedUpTo)))
+                    .orderByDesc("push_time").orderByDesc("blog_id")
+                    .last("LIMIT " + fetch).list()
+                    .forEach(a -> tuples.add(new DefaultTypedTuple<>(a.getBlogId().toString(), a.getPushTime().doubleValue())));
+        }
+
+        // 4、从关注的大V发件箱中拉取
+        if (CollUtil.isNotEmpty(bigVs)) {
+            List<Object> outboxes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String bigV : bigVs) {
+                    conn.zRevRangeByScoreWithScores(FEED_OUTBOX_KEY + bigV, 0, max, 0, fetch);
+                }
+                return null;
+            });
+            for (Object outbox : outboxes) {
+                @SuppressWarnings("unchecked")
+                Set<ZSetOperations.TypedTuple<String>> set = (Set<ZSetOperations.TypedTuple<String>>) outbox;
+                tuples.addAll(set);
+            }
+        }
+        if (tuples.isEmpty()) {
+            return Result.ok();
+        }
+
+        // 5、合并排序，时间相同的按博文id倒序，保证每次翻页的顺序一致；同一篇博文只保留一次
+        tuples.sort(Comparator.comparingDouble((ZSetOperations.TypedTuple<String> t) -> -t.getScore())
+                .thenComparing(t -> -Long.parseLong(t.getValue())));
+        Set<String> seen = new HashSet<>();
+        List<ZSetOperations.TypedTuple<String>> page = tuples.stream()
+                .filter(t -> seen.add(t.getValue()))
+                .skip(offset).limit(count)
+                .collect(Collectors.toList());
+        if (page.isEmpty()) {
+            return Result.ok();
+        }
+
+        // 6、解析出博文id、最小时间戳和下一页的 offset
+        List<Long> ids = new ArrayList<>(page.size());
+        long minTime = 0;
+        int os = 1;
+        for (ZSetOperations.TypedTuple<String> tuple : page) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            long time = tuple.getScore().longValue();
+            if (time == minTime) {
+                os++;
+            } else {
+                minTime = time;
+                os = 1;
+            }
+        }
+        // 整页的时间戳都和上一页的最小值相同，需要把上一页的 offset 累加上
+        if (minTime == max) {
+            os += offset;
+        }
+
+        // 7、批量查询博文，并按照时间顺序排列
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> blogs = ids.stream().map(blogMap::get).filter(Objects::nonNull).collect(Collectors.toList());
+        if (!blogs.isEmpty()) {
+            fillBlogUsers(blogs);
+            fillBlogLikes(blogs);
+        }
+
+        // 8、封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        r.setOffset(os);
+        r.setMinTime(minTime);
+        return Result.ok(r);
+    }
+
+    private void fillBlogUsers(List<Blog> blogs) {
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, User> userMap = userService.listByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        blogs.forEach(blog -> {
+            User user = userMap.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        });
+    }
+
+    /**
+     * 用一次 pipeline 查出当前用户是否点赞过，并把还没刷库的点赞增量叠加到 liked 上，
+     * 包括正在刷库的那一份
+     */
+    private void fillBlogLikes(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        String[] blogIds = blogs.stream().map(blog -> blog.getId().toString()).toArray(String[]::new);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMGet(BLOG_LIKED_DELTA_KEY, blogIds);
+            conn.hMGet(BLOG_LIKED_FLUSHING_KEY, blogIds);
+            if (user != null) {
+                for (String blogId : blogIds) {
+                    conn.zScore(BLOG_LIKED_KEY + blogId, user.getId().toString());
+                }
+            }
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        List<String> deltas = (List<String>) results.get(0);
+        @SuppressWarnings("unchecked")
+        List<String> flushing = (List<String>) results.get(1);
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            String delta = deltas.get(i);
+            String flushingDelta = flushing.get(i);
+            if (delta != null || flushingDelta != null) {
+                int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                liked += (delta == null ? 0 : Integer.parseInt(delta))
+                        + (flushingDelta == null ? 0 : Integer.parseInt(flushingDelta));
+                blog.setLiked(Math.max(liked, 0));
+            }
+            blog.setIsLike(user != null && results.get(i + 2) != null);
+        }
+    }
+
+    /**
+     * 定时把 Redis 里累计的点赞增量批量写回数据库，同一篇博文的多次点赞只产生一条 UPDATE。
+     * 增量 hash 先改名成待刷库的 key，事务提交后才删除；刷库失败或进程退出时这个 key 留在 Redis 里，
+     * 下一次刷库（包括重启后的第一次）先把它写完，增量不会丢
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushBlogLiked() {
+        SimpleRedisLock lock = new SimpleRedisLock("blog:liked:flush", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            // 1、把增量 hash 改名成待刷库的 key，上一次失败留下的 key 要先处理掉，之后的点赞累计到新的 hash 里
+            if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_LIKED_FLUSHING_KEY))) {
+                if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_LIKED_DELTA_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY);
+            }
+            // 2、过滤掉点赞又取消的博文
+            Map<Object, Object> deltas = stringRedisTemplate.opsForHash().entries(BLOG_LIKED_FLUSHING_KEY);
+            Map<String, Long> changed = new HashMap<>(deltas.size());
+            deltas.forEach((blogId, value) -> {
+                long delta = Long.parseLong(value.toString());
+                if (delta != 0) {
+                    changed.put(blogId.toString(), delta);
+                }
+            });
+            // 3、在一个事务里批量更新数据库
+            if (!changed.isEmpty()) {
+                IBlogService proxy = (IBlogService) AopContext.currentProxy();
+                proxy.persistLikedDeltas(changed);
+            }
+            // 4、提交之后再删除已刷库的增量
+            stringRedisTemplate.delete(BLOG_LIKED_FLUSHING_KEY);
+            log.debug("点赞数刷库完成，共 {} 篇博文", changed.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @Transactional
+    public void persistLikedDeltas(Map<String, Long> deltas) {
+        executeBatch(deltas.entrySet(), LIKED_FLUSH_BATCH_SIZE, (sqlSession, e) -> sqlSession.getMapper(BlogMapper.class)
+                .incrLiked(Long.valueOf(e.getKey()), e.getValue()));
+    }
+
+    /**
+     * 定时批量重算热度：按主键分批扫描博文，只保留热度最高的 HOT_BLOG_MAX_SIZE 条，
+     * 写入临时 key 后用脚本原子替换排行榜。重算期间不刷点赞数，数据库里的点赞数加上替换时还没刷库的增量就是最新的点赞数
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000)
+    public void refreshHotBlogRank() {
+        // 多个实例只需要一个去重算
+        SimpleRedisLock lock = new SimpleRedisLock("blog:hot", stringRedisTemplate);
+        if (!lock.tryLock(120)) {
+            return;
+        }
+        // 和点赞数刷库用同一把锁，重算期间的点赞都留在增量里
+        SimpleRedisLock flushLock = new SimpleRedisLock("blog:liked:flush", stringRedisTemplate);
+        if (!flushLock.tryLock(120)) {
+            lock.unlock();
+            return;
+        }
+        try {
+            long nowSecond = System.currentTimeMillis() / 1000;
+            // 小顶堆，堆顶是当前热度最低的博文
+            PriorityQueue<ZSetOperations.TypedTuple<String>> top =
+                    new PriorityQueue<>(Comparator.comparingDouble(ZSetOperations.TypedTuple::getScore));
+            Map<String, String> createSeconds = new HashMap<>();
+            long lastId = 0;
+            while (true) {
+                List<Blog> blogs = query().select("id", "liked", "create_time")
+                        .gt("id", lastId).orderByAsc("id")
+                        .last("LIMIT " + HOT_BLOG_BATCH_SIZE).list();
+                for (Blog blog : blogs) {
+                    long createSecond = blog.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+                    int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                    double score = hotScore(liked, (nowSecond - createSecond) / 3600.0);
+                    String id = blog.getId().toString();
+                    top.offer(new DefaultTypedTuple<>(id, score));
+                    createSeconds.put(id, String.valueOf(createSecond));
+                    if (top.size() > HOT_BLOG_MAX_SIZE) {
+                        createSeconds.remove(top.poll().getValue());
+                    }
+                }
+                if (blogs.size() < HOT_BLOG_BATCH_SIZE) {
+                    break;
+                }
+                lastId = blogs.get(blogs.size() - 1).getId();
+            }
+            // 先写临时 key，再整体替换，查询方不会看到写了一半的排行榜
+            String tmpKey = BLOG_HOT_KEY + ":tmp";
+            String tmpTimeKey = BLOG_HOT_TIME_KEY + ":tmp";
+            stringRedisTemplate.delete(Arrays.asList(tmpKey, tmpTimeKey));
+            if (!top.isEmpty()) {
+                stringRedisTemplate.opsForZSet().add(tmpKey, new HashSet<>(top));
+                stringRedisTemplate.opsForHash().putAll(tmpTimeKey, createSeconds);
+            }
+            // 替换时叠加还没刷库的点赞增量，并保留重算期间新发布的博文
+            Long size = stringRedisTemplate.execute(HOT_RANK_SWAP_SCRIPT,
+                    Arrays.asList(tmpKey, tmpTimeKey, BLOG_HOT_KEY, BLOG_HOT_TIME_KEY,
+                            BLOG_LIKED_DELTA_KEY, BLOG_LIKED_FLUSHING_KEY),
+                    String.valueOf(nowSecond), String.valueOf(HOT_BLOG_GRAVITY));
+            log.debug("热门博文排行榜重算完成，共 {} 条", size);
+        } finally {
+            flushLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    private static double hotScore(int liked, double ageHours) {
+        return (liked + 1) / Math.pow(ageHours + 2, HOT_BLOG_GRAVITY);
+    }
 }
@@ -0,0 +1,185 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.entity.FeedArchive;
+import com.hmdp.mapper.FeedArchiveMapper;
+import com.hmdp.service.IFeedArchiveService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SimpleRedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.FEED_INACTIVE_DAYS;
+import static com.hmdp.utils.SystemConstants.FEED_INBOX_MAX_SIZE;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Slf4j
+@Service
+public class FeedArchiveServiceImpl extends ServiceImpl<FeedArchiveMapper, FeedArchive> implements IFeedArchiveService {
+
+    // 整理收件箱时每批处理的用户数量
+    private static final int FEED_COMPACT_BATCH_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 从关注的人的发件箱拉取 since 之后的博文，合并进收件箱
+     */
+    @Override
+    public void rebuildInbox(Long userId, long since) {
+        // 1、查询关注的人
+        Set<String> follows = stringRedisTemplate.opsForSet().members(FOLLOWS_KEY + userId);
+        if (CollUtil.isEmpty(follows)) {
+            return;
+        }
+        // 2、从每个人的发件箱拉取 since 之后最近的博文
+        List<Object> outboxes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String followId : follows) {
+                conn.zRevRangeByScoreWithScores(FEED_OUTBOX_KEY + followId, since, Double.POSITIVE_INFINITY, 0, FEED_INBOX_MAX_SIZE);
+            }
+            return null;
+        });
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Object outbox : outboxes) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> set = (Set<ZSetOperations.TypedTuple<String>>) outbox;
+            tuples.addAll(set);
+        }
+        if (tuples.isEmpty()) {
+            return;
+        }
+        // 3、写回收件箱，并裁剪到最大长度
+        String key = FEED_KEY + userId;
+        stringRedisTemplate.opsForZSet().add(key, tuples);
+        stringRedisTemplate.opsForZSet().removeRange(key, 0, -FEED_INBOX_MAX_SIZE - 1);
+    }
+
+    /**
+     * 定时整理收件箱：
+     * 1、长期不活跃用户的收件箱直接删除，下次访问时再从发件箱拉取重建
+     * 2、活跃用户的收件箱超出长度的旧消息归档到数据库
+     */
+    @Scheduled(fixedDelay = 60 * 60 * 1000)
+    public void compactInboxes() {
+        SimpleRedisLock lock = new SimpleRedisLock("feed:compact", stringRedisTemplate);
+        if (!lock.tryLock(600)) {
+            return;
+        }
+        try {
+            int dropped = dropInactiveInboxes();
+            int archived = archiveOverflow();
+            log.debug("收件箱整理完成，删除 {} 个不活跃收件箱，归档 {} 条消息", dropped, archived);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int dropInactiveInboxes() {
+        int dropped = 0;
+        double deadline = inactiveDeadline();
+        while (true) {
+            // 1、分批查询不活跃的用户
+            Set<String> userIds = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(FEED_ACTIVE_KEY, 0, deadline, 0, FEED_COMPACT_BATCH_SIZE);
+            if (CollUtil.isEmpty(userIds)) {
+                return dropped;
+            }
+            // 2、删除收件箱，并移出活跃用户集合
+            List<String> keys = new ArrayList<>(userIds.size());
+            userIds.forEach(userId -> keys.add(FEED_KEY + userId));
+            stringRedisTemplate.delete(keys);
+            stringRedisTemplate.opsForZSet().remove(FEED_ACTIVE_KEY, userIds.toArray());
+            dropped += userIds.size();
+        }
+    }
+
+    private int archiveOverflow() {
+        int archived = 0;
+        // 按活跃时间从小到大遍历，不按排名：遍历期间用户访问只会让活跃时间变大，
+        // 排名会变但不会移到游标之前，不会漏掉用户
+        double min = 0;
+        long skip = 0;
+        while (true) {
+            // 1、分批遍历活跃用户，用一次 pipeline 查出所有收件箱的长度
+            Set<ZSetOperations.TypedTuple<String>> batch = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(FEED_ACTIVE_KEY, min, Double.POSITIVE_INFINITY, skip, FEED_COMPACT_BATCH_SIZE);
+            if (CollUtil.isEmpty(batch)) {
+                return archived;
+            }
+            // 下一批从本批最大的活跃时间开始，跳过已经处理过的同分用户
+            List<String> userIds = new ArrayList<>(batch.size());
+            double last = min;
+            long ties = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : batch) {
+                userIds.add(tuple.getValue());
+                ties = tuple.getScore() == last ? ties + 1 : 1;
+                last = tuple.getScore();
+            }
+            skip = last == min ? skip + ties : ties;
+            min = last;
+            List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                userIds.forEach(userId -> conn.zCard(FEED_KEY + userId));
+                return null;
+            });
+            // 2、超出长度的收件箱，把最旧的消息归档后再删掉
+            for (int i = 0; i < userIds.size(); i++) {
+                long overflow = (Long) sizes.get(i) - FEED_INBOX_MAX_SIZE;
+                if (overflow > 0) {
+                    archived += archiveInbox(Long.valueOf(userIds.get(i)), overflow);
+                }
+            }
+        }
+    }
+
+    private int archiveInbox(Long userId, long overflow) {
+        String key = FEED_KEY + userId;
+        Set<ZSetOperations.TypedTuple<String>> oldest =
+                stringRedisTemplate.opsForZSet().rangeWithScores(key, 0, overflow - 1);
+        if (CollUtil.isEmpty(oldest)) {
+            return 0;
+        }
+        List<FeedArchive> archives = new ArrayList<>(oldest.size());
+        for (ZSetOperations.TypedTuple<String> tuple : oldest) {
+            archives.add(new FeedArchive()
+                    .setUserId(userId)
+                    .setBlogId(Long.valueOf(tuple.getValue()))
+                    .setPushTime(tuple.getScore().longValue()));
+        }
+        // 先写库、再记录归档到的时间、最后删缓存，中途失败重来也只会被唯一索引忽略；
+        // 按成员删除而不是按排名，期间推送进来的消息不会被误删
+        CollUtil.split(archives, FEED_COMPACT_BATCH_SIZE).forEach(getBaseMapper()::insertIgnoreBatch);
+        markArchived(userId, archives.stream().mapToLong(FeedArchive::getPushTime).max().getAsLong());
+        stringRedisTemplate.opsForZSet().remove(key, oldest.stream().map(ZSetOperations.TypedTuple::getValue).toArray());
+        return archives.size();
+    }
+
+    // 记录用户收件箱归档到的最大推送时间，读取时只有翻到这个时间之前才查归档表；只增不减，整理任务在锁里串行执行
+    private void markArchived(Long userId, long pushTime) {
+        String field = userId.toString();
+        Object previous = stringRedisTemplate.opsForHash().get(FEED_ARCHIVED_KEY, field);
+        if (previous == null || Long.parseLong(previous.toString()) < pushTime) {
+            stringRedisTemplate.opsForHash().put(FEED_ARCHIVED_KEY, field, String.valueOf(pushTime));
+        }
+    }
+
+    private static double inactiveDeadline() {
+        return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(FEED_INACTIVE_DAYS);
+    }
+}
@@ -1,10 +1,38 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -14,7 +42,232 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
 
+    // 关注、粉丝列表最多返回的用户数量
+    private static final int FOLLOW_LIST_MAX = 100;
+    // 关注变更持久化时每批写入的数量
+    private static final int FOLLOW_PERSIST_BATCH_SIZE = 500;
+    // 从数据库加载关注关系时每批读取的数量
+    private static final int FOLLOW_LOAD_BATCH_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> FOLLOW_SCRIPT;
+
+    static {
+        FOLLOW_SCRIPT = new DefaultRedisScript<>();
+        FOLLOW_SCRIPT.setLocation(new ClassPathResource("follow.lua"));
+        FOLLOW_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IUserService userService;
+
+    @Override
+    public Result follow(Long followUserId, Boolean isFollow) {
+        // 1、获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        if (userId.equals(followUserId)) {
+            return Result.fail("不能关注自己！");
+        }
+        if (userService.query().eq("id", followUserId).count() == 0) {
+            return Result.fail("用户不存在！");
+        }
+        // 2、执行lua脚本，原子地修改关注集合、粉丝集合，并记录待持久化的变更
+        stringRedisTemplate.execute(
+                FOLLOW_SCRIPT,
+                Arrays.asList(FOLLOWS_KEY + userId, FANS_KEY + followUserId, FOLLOWS_PENDING_KEY),
+                userId.toString(), followUserId.toString(), BooleanUtil.isTrue(isFollow) ? "1" : "0"
+        );
+        return Result.ok();
+    }
+
+    @Override
+    public Result isFollow(Long followUserId) {
+        // 1、获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 2、SISMEMBER follows:{userId} followUserId
+        Boolean isMember = stringRedisTemplate.opsForSet().isMember(FOLLOWS_KEY + userId, followUserId.toString());
+        return Result.ok(BooleanUtil.isTrue(isMember));
+    }
+
+    @Override
+    public Result followCommons(Long id) {
+        // 1、获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 2、求交集 SINTER follows:{userId} follows:{id}
+        Set<String> intersect = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FOLLOWS_KEY + id);
+        if (CollUtil.isEmpty(intersect)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 3、查询用户
+        return Result.ok(queryUserDTOs(intersect));
+    }
+
+    @Override
+    public Result queryFollows(Long userId) {
+        return Result.ok(queryUserDTOs(scanMembers(FOLLOWS_KEY + userId)));
+    }
+
+    @Override
+    public Result queryFans(Long userId) {
+        return Result.ok(queryUserDTOs(scanMembers(FANS_KEY + userId)));
+    }
+
+    // 用 SSCAN 取集合中的前 FOLLOW_LIST_MAX 个成员，避免大V的粉丝集合一次性全部读出
+    private List<String> scanMembers(String key) {
+        List<String> members = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().count(FOLLOW_LIST_MAX).build();
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(key, options)) {
+            while (cursor.hasNext() && members.size() < FOLLOW_LIST_MAX) {
+                members.add(cursor.next());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return members;
+    }
+
+    private List<UserDTO> queryUserDTOs(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = userIds.stream().map(Long::valueOf).collect(Collectors.toList());
+        return userService.listByIds(ids).stream()
+                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Redis 里没有加载标记时（首次上线、Redis 清空或主从切换丢数据），从数据库重建所有关注、粉丝集合，
+     * 之后再把还没持久化的变更重放一遍，避免被数据库里的旧关系覆盖
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 60 * 1000)
+    public void loadFollowGraph() {
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(FOLLOWS_LOADED_KEY))) {
+            return;
+        }
+        // 和持久化任务用同一把锁：加载期间读的是数据库快照，期间持久化掉的取关不在待持久化的变更里，
+        // 重放不到，会被快照里的旧关系加回来
+        SimpleRedisLock lock = new SimpleRedisLock("follows:flush", stringRedisTemplate);
+        if (!lock.tryLock(600)) {
+            return;
+        }
+        try {
+            if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(FOLLOWS_LOADED_KEY))) {
+                return;
+            }
+            // 1、按主键分批读取关注关系，每批用一次 pipeline 写入
+            long lastId = 0;
+            long loaded = 0;
+            while (true) {
+                List<Follow> follows = query().select("id", "user_id", "follow_user_id")
+                        .gt("id", lastId).orderByAsc("id")
+                        .last("LIMIT " + FOLLOW_LOAD_BATCH_SIZE).list();
+                if (!follows.isEmpty()) {
+                    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        StringRedisConnection conn = (StringRedisConnection) connection;
+                        follows.forEach(follow -> {
+                            conn.sAdd(FOLLOWS_KEY + follow.getUserId(), follow.getFollowUserId().toString());
+                            conn.sAdd(FANS_KEY + follow.getFollowUserId(), follow.getUserId().toString());
+                        });
+                        return null;
+                    });
+                    loaded += follows.size();
+                }
+                if (follows.size() < FOLLOW_LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = follows.get(follows.size() - 1).getId();
+            }
+            // 2、重放还没持久化的变更，加载期间发生的取关不会被数据库里的旧关系加回来；
+            // 持久化任务拿不到锁，变更都还在这两个 hash 里
+            Map<Object, Object> changes = new HashMap<>(stringRedisTemplate.opsForHash().entries(FOLLOWS_PENDING_KEY + ":flushing"));
+            changes.putAll(stringRedisTemplate.opsForHash().entries(FOLLOWS_PENDING_KEY));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                changes.forEach((k, v) -> {
+                    List<String> ids = StrUtil.split(k.toString(), ':');
+                    if ("1".equals(v)) {
+                        conn.sAdd(FOLLOWS_KEY + ids.get(0), ids.get(1));
+                        conn.sAdd(FANS_KEY + ids.get(1), ids.get(0));
+                    } else {
+                        conn.sRem(FOLLOWS_KEY + ids.get(0), ids.get(1));
+                        conn.sRem(FANS_KEY + ids.get(1), ids.get(0));
+                    }
+                });
+                return null;
+            });
+            // 3、写入加载标记
+            stringRedisTemplate.opsForValue().set(FOLLOWS_LOADED_KEY, String.valueOf(System.currentTimeMillis()));
+            log.info("关注关系加载完成，共 {} 条", loaded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 定时把 Redis 里累计的关注变更批量写入数据库
+     */
+    @Scheduled(fixedDelay = 2000)
+    public void flushFollowChanges() {
+        SimpleRedisLock lock = new SimpleRedisLock("follows:flush", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            // 1、把变更 hash 改名成待持久化的 key，上一次失败留下的 key 要先处理掉
+            String flushingKey = FOLLOWS_PENDING_KEY + ":flushing";
+            if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(flushingKey))) {
+                if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(FOLLOWS_PENDING_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(FOLLOWS_PENDING_KEY, flushingKey);
+            }
+            // 2、读取变更并在一个事务里写入数据库
+            Map<Object, Object> changes = stringRedisTemplate.opsForHash().entries(flushingKey);
+            IFollowService proxy = (IFollowService) AopContext.currentProxy();
+            proxy.persistFollowChanges(changes);
+            // 3、删除已持久化的变更
+            stringRedisTemplate.delete(flushingKey);
+            log.debug("关注关系持久化完成，共 {} 条变更", changes.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @Transactional
+    public void persistFollowChanges(Map<Object, Object> changes) {
+        // 1、解析变更，key 为 userId:followUserId，value 为 1 关注 / 0 取关
+        List<Follow> pairs = new ArrayList<>(changes.size());
+        List<Follow> follows = new ArrayList<>();
+        changes.forEach((k, v) -> {
+            List<String> ids = StrUtil.split(k.toString(), ':');
+            Follow follow = new Follow()
+                    .setUserId(Long.valueOf(ids.get(0)))
+                    .setFollowUserId(Long.valueOf(ids.get(1)));
+            pairs.add(follow);
+            if ("1".equals(v)) {
+                follows.add(follow);
+            }
+        });
+        // 2、先删除所有涉及的关注关系，再插入最终是关注状态的，重复执行也不会出错
+        for (List<Follow> batch : CollUtil.split(pairs, FOLLOW_PERSIST_BATCH_SIZE)) {
+            QueryWrapper<Follow> wrapper = new QueryWrapper<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Follow follow = batch.get(i);
+                if (i > 0) {
+                    wrapper.or();
+                }
+                wrapper.nested(w -> w.eq("user_id", follow.getUserId()).eq("follow_user_id", follow.getFollowUserId()));
+            }
+            remove(wrapper);
+        }
+        saveBatch(follows, FOLLOW_PERSIST_BATCH_SIZE);
+    }
 }
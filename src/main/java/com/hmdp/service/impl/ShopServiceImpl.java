@@ -6,11 +6,13 @@ import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ReactiveCacheClient;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
@@ -33,6 +35,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ReactiveCacheClient reactiveCacheClient;
+
     @Override
     public Result queryById(Long id) {
         // 缓存空值解决缓存穿透
@@ -54,6 +59,16 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    @Override
+    public CompletableFuture<Result> queryByIdAsync(Long id) {
+        // 非阻塞地查询缓存，等待 Redis 期间不占用 Tomcat 线程
+        return reactiveCacheClient
+                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                .map(Result::ok)
+                .defaultIfEmpty(Result.fail("店铺不存在！"))
+                .toFuture();
+    }
+
 //    public Shop queryWithMutex(Long id) {
 //        // 1、根据 id 从 redis 查询商铺缓存
 //        String key = CACHE_SHOP_KEY + id;
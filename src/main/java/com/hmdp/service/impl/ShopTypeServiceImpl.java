@@ -7,11 +7,13 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.ReactiveCacheClient;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hmdp.utils.RedisConstants.CACHE_TYPE_KEY;
 
@@ -29,6 +31,9 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private ReactiveCacheClient reactiveCacheClient;
+
     @Override
     public Result queryType() {
         // 1、从 redis 查询商铺类型缓存
@@ -54,4 +59,13 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
         // 7、返回
         return Result.ok(shopTypeList);
     }
+
+    @Override
+    public CompletableFuture<Result> queryTypeAsync() {
+        // 和商铺详情一样走 ReactiveCacheClient，等待 Redis 期间不占用 Tomcat 线程，缓存和同步版本是同一个 key
+        return reactiveCacheClient
+                .queryListWithPassThrough(CACHE_TYPE_KEY, ShopType.class, () -> query().orderByAsc("sort").list())
+                .map(Result::ok)
+                .toFuture();
+    }
 }
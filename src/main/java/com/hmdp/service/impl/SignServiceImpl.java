@@ -0,0 +1,182 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import com.hmdp.service.ISignService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.USER_SIGN_ARCHIVED_KEY;
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Slf4j
+@Service
+public class SignServiceImpl extends ServiceImpl<SignMapper, Sign> implements ISignService {
+
+    private static final DateTimeFormatter SIGN_MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    // 一个月最多 31 天，整月的签到用一个 u31 就能读出来
+    private static final BitFieldSubCommands.BitFieldType SIGN_MONTH_TYPE = BitFieldSubCommands.BitFieldType.unsigned(31);
+    // 归档时每批处理的 key 数量
+    private static final int SIGN_ARCHIVE_BATCH_SIZE = 1000;
+    // 归档后 Redis 里的位图再保留的天数
+    private static final long SIGN_ARCHIVED_TTL = 7L;
+    // 每晚检查最近多少个已结束的月份有没有归档，漏跑的月份会在之后补上
+    private static final int SIGN_ARCHIVE_LOOKBACK_MONTHS = 12;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public Result sign() {
+        // 1、获取当前登录用户和日期
+        Long userId = UserHolder.getUser().getId();
+        LocalDateTime now = LocalDateTime.now();
+        // 2、拼接key sign:{userId}:{yyyyMM}
+        String key = signKey(userId, now);
+        // 3、今天是本月第几天，写入Redis SETBIT key offset 1
+        int dayOfMonth = now.getDayOfMonth();
+        stringRedisTemplate.opsForValue().setBit(key, dayOfMonth - 1, true);
+        return Result.ok();
+    }
+
+    @Override
+    public Result signCount() {
+        // 1、本月签到的总天数 BITCOUNT key
+        String key = signKey(UserHolder.getUser().getId(), LocalDateTime.now());
+        Long count = stringRedisTemplate.execute(
+                (RedisCallback<Long>) connection -> connection.bitCount(key.getBytes(StandardCharsets.UTF_8)));
+        return Result.ok(count == null ? 0 : count);
+    }
+
+    @Override
+    public Result signStreak() {
+        // 1、获取本月截止今天为止的所有签到记录 BITFIELD key GET u{dayOfMonth} 0
+        LocalDateTime now = LocalDateTime.now();
+        String key = signKey(UserHolder.getUser().getId(), now);
+        int dayOfMonth = now.getDayOfMonth();
+        List<Long> result = stringRedisTemplate.opsForValue().bitField(key,
+                BitFieldSubCommands.create()
+                        .get(BitFieldSubCommands.BitFieldType.unsigned(dayOfMonth)).valueAt(0));
+        if (CollUtil.isEmpty(result) || result.get(0) == null) {
+            return Result.ok(0);
+        }
+        // 2、今天在最低位，连续签到天数就是末尾连续 1 的个数，也就是取反后末尾 0 的个数
+        long num = result.get(0);
+        return Result.ok(Long.numberOfTrailingZeros(~num));
+    }
+
+    /**
+     * 每天凌晨把已经结束、还没归档的月份的签到位图归档到数据库，一个用户一个月只占一行。
+     * 归档完成的月份记入 sign:archived，某一晚失败或没跑，第二天晚上会重试
+     */
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void archiveCompletedMonths() {
+        SimpleRedisLock lock = new SimpleRedisLock("sign:archive", stringRedisTemplate);
+        if (!lock.tryLock(3600)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = SIGN_ARCHIVE_LOOKBACK_MONTHS; i >= 1; i--) {
+                LocalDateTime month = now.minusMonths(i);
+                String yyyyMM = month.format(SIGN_MONTH_FORMATTER);
+                if (BooleanUtil.isTrue(stringRedisTemplate.opsForSet().isMember(USER_SIGN_ARCHIVED_KEY, yyyyMM))) {
+                    continue;
+                }
+                int archived = archiveMonth(month);
+                stringRedisTemplate.opsForSet().add(USER_SIGN_ARCHIVED_KEY, yyyyMM);
+                log.debug("{} 签到归档完成，共 {} 条", yyyyMM, archived);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int archiveMonth(LocalDateTime month) {
+        String suffix = ":" + month.format(SIGN_MONTH_FORMATTER);
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(USER_SIGN_KEY + "*" + suffix).count(SIGN_ARCHIVE_BATCH_SIZE).build();
+        int archived = 0;
+        // 1、SCAN 遍历这个月的签到 key，每凑够一批归档一次；游标要独占一个连接，遍历完才关闭
+        try (Cursor<byte[]> cursor = stringRedisTemplate.executeWithStickyConnection(
+                connection -> connection.scan(options))) {
+            List<String> keys = new ArrayList<>(SIGN_ARCHIVE_BATCH_SIZE);
+            while (cursor != null && cursor.hasNext()) {
+                keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                if (keys.size() == SIGN_ARCHIVE_BATCH_SIZE || !cursor.hasNext()) {
+                    archived += archiveKeys(keys, suffix, month);
+                    keys.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return archived;
+    }
+
+    private int archiveKeys(List<String> keys, String suffix, LocalDateTime month) {
+        // 1、用一次 pipeline 读出整月的位图
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            keys.forEach(key -> conn.bitfield(key, BitFieldSubCommands.create().get(SIGN_MONTH_TYPE).valueAt(0)));
+            return null;
+        });
+        // 2、批量写入数据库，重复归档会覆盖
+        List<Sign> signs = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<Long> bits = (List<Long>) results.get(i);
+            if (CollUtil.isEmpty(bits) || bits.get(0) == null) {
+                continue;
+            }
+            String userId = StrUtil.removeSuffix(StrUtil.removePrefix(keys.get(i), USER_SIGN_KEY), suffix);
+            signs.add(new Sign()
+                    .setUserId(Long.valueOf(userId))
+                    .setYear(month.getYear())
+                    .setMonth(month.getMonthValue())
+                    .setBits(bits.get(0).intValue()));
+        }
+        if (!signs.isEmpty()) {
+            getBaseMapper().upsertBatch(signs);
+        }
+        // 3、已归档的位图不再需要常驻内存
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            keys.forEach(key -> conn.expire(key, TimeUnit.DAYS.toSeconds(SIGN_ARCHIVED_TTL)));
+            return null;
+        });
+        return signs.size();
+    }
+
+    private static String signKey(Long userId, LocalDateTime time) {
+        return USER_SIGN_KEY + userId + ":" + time.format(SIGN_MONTH_FORMATTER);
+    }
+}
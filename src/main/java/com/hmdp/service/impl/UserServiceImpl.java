@@ -2,6 +2,7 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -11,15 +12,23 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.RedisBatch;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedTokenManager;
+import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -37,9 +46,27 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
+    // 一个验证码有效期内最多允许尝试的次数
+    private static final int LOGIN_CODE_MAX_ATTEMPTS = 5;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
+    @Resource
+    private SessionCache sessionCache;
+
+    @Resource
+    private RedisBatch redisBatch;
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @Value("${hmdp.admin.user-ids:}")
+    private Set<Long> adminUserIds;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
 
@@ -69,6 +96,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 2、如果不符合，返回错误信息
             return Result.fail("手机号格式错误！");
         }
+        // 2.1、限制同一个手机号尝试验证码的次数，验证码有效期内最多试 5 次
+        if (rateLimiter.tryAcquire("login:phone:" + phone, LOGIN_CODE_MAX_ATTEMPTS,
+                (int) TimeUnit.MINUTES.toSeconds(LOGIN_CODE_TTL), LOGIN_CODE_MAX_ATTEMPTS) > 0) {
+            return Result.fail("验证码错误次数过多，请稍后再试！");
+        }
         // 3、从 Redis 里获取验证码，校验验证码
         String cacheCode = stringRedisTemplate.opsForValue().get(LOGIN_CODE_KEY + phone);
         String code = loginForm.getCode();
@@ -84,28 +116,75 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 6、不存在，创建新用户并保存
             user = createUserWithPhone(phone);
         }
-        // 7、保存用户信息到 Redis 中
-        // 7.1、随机生成token，作为登录令牌
-        String token = UUID.randomUUID().toString(true);
-
-        // 7.2、将User转为UserDTO，隐藏敏感信息
+        // 7、将User转为UserDTO，隐藏敏感信息
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
 
+        // 8、签名 token 模式，用户信息都在 token 里，不需要写 Redis
+        if (signedTokenManager.isEnabled()) {
+            return Result.ok(signedTokenManager.create(userDTO));
+        }
+
+        // 9、保存用户信息到 Redis 中
+        // 9.1、随机生成token，作为登录令牌
+        String token = UUID.randomUUID().toString(true);
+
         // 把 userDTO 中的非空字段转换成 Map，并将每个字段值都强制转为 String 类型。
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+        Map<String, String> userMap = new HashMap<>();
+        BeanUtil.beanToMap(userDTO, new HashMap<>(), CopyOptions.create().setIgnoreNullValue(true))
+                .forEach((fieldName, fieldValue) -> userMap.put(fieldName, fieldValue.toString()));
 
-        // 7.3、存储到redis
+        // 9.2、用一次 pipeline 存储到redis，设置token有效期，并把 token 记到用户的 token 集合里
         String tokenKey = LOGIN_USER_KEY + token;
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
+        String tokensKey = LOGIN_USER_TOKENS_KEY + user.getId();
+        long ttl = TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+        redisBatch.pipeline(conn -> {
+            conn.hMSet(tokenKey, userMap);
+            conn.expire(tokenKey, ttl);
+            conn.sAdd(tokensKey, token);
+            conn.expire(tokensKey, ttl);
+        });
+
+        // 10、返回token
+        return Result.ok(token);
+    }
 
-        // 7.4 设置token有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+    @Override
+    public Result logout(String token) {
+        UserDTO user = UserHolder.getUser();
+        // 1、签名 token 无法单独作废，只能吊销该用户已签发的所有 token
+        if (SignedTokenManager.isSigned(token)) {
+            signedTokenManager.revokeAll(user.getId());
+            return Result.ok();
+        }
+        // 2、一次 pipeline 删除 token 和用户 token 集合里的这一项，并通知所有节点失效本地缓存
+        redisBatch.pipeline(conn -> {
+            conn.del(LOGIN_USER_KEY + token);
+            conn.sRem(LOGIN_USER_TOKENS_KEY + user.getId(), token);
+            sessionCache.invalidate(conn, Collections.singletonList(token));
+        });
+        return Result.ok();
+    }
 
-        // 8、返回token
-        return Result.ok(token);
+    @Override
+    public Result revokeSessions(Long userId) {
+        // 1、只有管理员可以吊销别人的会话
+        if (!adminUserIds.contains(UserHolder.getUser().getId())) {
+            return Result.fail("没有权限！");
+        }
+        // 2、从用户的 token 集合里取出所有 token，只处理这个用户的 token，不需要扫描全部 key
+        String tokensKey = LOGIN_USER_TOKENS_KEY + userId;
+        Set<String> tokens = stringRedisTemplate.opsForSet().members(tokensKey);
+        if (CollUtil.isNotEmpty(tokens)) {
+            // 3、一次 pipeline 删除所有 token 和 token 集合，并通知所有节点失效本地缓存
+            redisBatch.pipeline(conn -> {
+                tokens.forEach(token -> conn.del(LOGIN_USER_KEY + token));
+                conn.del(tokensKey);
+                sessionCache.invalidate(conn, tokens);
+            });
+        }
+        // 4、签名 token 通过版本号吊销
+        signedTokenManager.revokeAll(userId);
+        return Result.ok(tokens == null ? 0 : tokens.size());
     }
 
     private User createUserWithPhone(String phone) {
@@ -1,23 +1,38 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.OrderStatusCache;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillWaitingRoom;
 import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderSharding;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.SystemConstants.VOUCHER_ORDER_SHARDS;
 
 /**
  * <p>
@@ -27,9 +42,18 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+    private static final DefaultRedisScript<Long> STOCK_DECR_SCRIPT;
+
+    static {
+        STOCK_DECR_SCRIPT = new DefaultRedisScript<>();
+        STOCK_DECR_SCRIPT.setLocation(new ClassPathResource("seckill_stock_decr.lua"));
+        STOCK_DECR_SCRIPT.setResultType(Long.class);
+    }
+
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
@@ -38,10 +62,29 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    @Resource
+    private OrderStatusCache orderStatusCache;
+
+    // 秒杀券是否开启了排队，每个秒杀请求都要判断，本地缓存一小段时间；不存在的优惠券缓存为 false
+    private final Cache<Long, Boolean> waitingRoomEnabled = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 0、开启了排队的秒杀券，只有排队排到的用户才能下单，其余请求不查数据库
+        if (isWaitingRoomEnabled(voucherId) && !seckillWaitingRoom.isAdmitted(voucherId, UserHolder.getUser().getId())) {
+            return Result.fail("还没有排到，请继续排队！");
+        }
         // 1、查询优惠券
         SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            return Result.fail("优惠券不存在！");
+        }
         // 2、判断秒杀是否开始
         if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
             // 尚未开始
@@ -52,13 +95,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             // 已经结束
             return Result.fail("秒杀已经结束！");
         }
+        Long userId = UserHolder.getUser().getId();
         // 4、判断库存是否充足
         if (voucher.getStock() < 1) {
+            orderStatusCache.failed(userId, voucherId, "库存不足！");
             return Result.fail("库存不足！");
         }
 
-        Long userId = UserHolder.getUser().getId();
-
         // 创建锁对象
         SimpleRedisLock lock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
         // 获取锁
@@ -67,28 +110,132 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             // 获取锁失败，返回异常
             return Result.fail("一个用户只能下一单！");
         }
+        boolean done = false;
         try {
+            // 已受理，轮询订单状态的用户先看到 PENDING
+            orderStatusCache.pending(userId, voucherId);
             // 获取代理对象（事务）
             IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
+            Result result = proxy.createVoucherOrder(voucherId);
+            // 事务已经提交，后面写缓存失败也不能再把状态写成下单失败
+            done = true;
+            // 写入 CREATED 并扣减展示用的库存，都是尽力而为，失败的原因由 createVoucherOrder 写入
+            if (Boolean.TRUE.equals(result.getSuccess())) {
+                try {
+                    orderStatusCache.created(userId, voucherId, (Long) result.getData());
+                    stringRedisTemplate.execute(STOCK_DECR_SCRIPT, Collections.singletonList(SECKILL_STOCK_KEY + voucherId));
+                } catch (Exception e) {
+                    // 订单状态超时后会查库确认，展示用的库存在预热的有效期过后按数据库重新预热
+                    log.warn("订单创建后更新缓存失败，userId: {}, voucherId: {}", userId, voucherId, e);
+                }
+            }
+            return result;
         } catch (IllegalStateException e) {
             throw new RuntimeException(e);
         } finally {
+            if (!done) {
+                orderStatusCache.failed(userId, voucherId, "下单失败，请重试！");
+            }
             // 释放锁
             lock.unlock();
         }
 
     }
 
+    @Override
+    public Result joinSeckillQueue(Long voucherId) {
+        // 1、只有存在且开启了排队的秒杀券才能取号，随便传的id不会生成排队数据
+        if (!isWaitingRoomEnabled(voucherId)) {
+            return Result.fail("该优惠券不需要排队！");
+        }
+        // 2、取号
+        Long userId = UserHolder.getUser().getId();
+        seckillWaitingRoom.join(voucherId, userId);
+        // 3、返回排队状态
+        return querySeckillQueue(voucherId);
+    }
+
+    @Override
+    public Result querySeckillQueue(Long voucherId) {
+        // 1、查询号码，号码和放行位置都优先走本地缓存
+        Long position = seckillWaitingRoom.position(voucherId, UserHolder.getUser().getId());
+        if (position == null) {
+            return Result.fail("还没有排队！");
+        }
+        long admitted = seckillWaitingRoom.admitted(voucherId);
+        // 2、返回号码、前面还有多少人、是否可以下单
+        Map<String, Object> status = new LinkedHashMap<>(4);
+        status.put("position", position);
+        status.put("ahead", Math.max(position - admitted - 1, 0));
+        status.put("admitted", position <= admitted);
+        return Result.ok(status);
+    }
+
+    private boolean isWaitingRoomEnabled(Long voucherId) {
+        return waitingRoomEnabled.get(voucherId, id -> {
+            SeckillVoucher voucher = seckillVoucherService.getById(id);
+            return voucher != null && Boolean.TRUE.equals(voucher.getWaitingRoom());
+        });
+    }
+
+    @Override
+    public Result queryOrderById(Long orderId) {
+        Long userId = UserHolder.getUser().getId();
+        // 1、按订单id里的分片号查
+        int shard = VoucherOrderSharding.shardOfOrder(orderId);
+        VoucherOrder order = shard < VOUCHER_ORDER_SHARDS
+                ? VoucherOrderSharding.withShard(shard, () -> getById(orderId)) : null;
+        // 2、没查到自己的订单，可能是分表前的旧订单，id里没有分片号，
+        // 迁移时按用户搬到了分表里（见 db/migration/002_voucher_order_sharding.sql），再到用户的分片上查
+        int userShard = VoucherOrderSharding.shardOfUser(userId);
+        if ((order == null || !order.getUserId().equals(userId)) && shard != userShard) {
+            order = VoucherOrderSharding.withShard(userShard, () -> getById(orderId));
+        }
+        // 3、不是自己的订单
+        if (order == null || !order.getUserId().equals(userId)) {
+            return Result.fail("订单不存在！");
+        }
+        return Result.ok(order);
+    }
+
+    @Override
+    public Result queryOrderStatus(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        // 1、查询最近订单的状态缓存，秒杀期间的轮询到这里就返回
+        OrderStatusCache.OrderStatus status = orderStatusCache.get(userId, voucherId);
+        if (status == null || status.isStalePending()) {
+            // 2、超过保留期的订单，或者受理后太久没有结果的，查数据库，查到的结果写回缓存
+            VoucherOrder order = VoucherOrderSharding.withShard(VoucherOrderSharding.shardOfUser(userId),
+                    () -> query().eq("user_id", userId).eq("voucher_id", voucherId).one());
+            if (order != null) {
+                orderStatusCache.created(userId, voucherId, order.getId());
+            } else if (status == null) {
+                // 没有订单也写入，已经有状态（期间刚下了单）时不覆盖
+                orderStatusCache.none(userId, voucherId);
+            } else {
+                orderStatusCache.failPending(userId, voucherId, status, "下单失败，请重试！");
+            }
+            status = orderStatusCache.get(userId, voucherId);
+        }
+        if (status == null || status.getState() == OrderStatusCache.State.NONE) {
+            return Result.fail("没有下单记录！");
+        }
+        return Result.ok(status);
+    }
+
     @Transactional
     public Result createVoucherOrder(Long voucherId) {
         // 5、一人一单
         Long userId = UserHolder.getUser().getId();
-        // 5.1、查询订单
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
+        // 订单按用户分表，同一个用户的订单都在同一个分片上
+        int shard = VoucherOrderSharding.shardOfUser(userId);
+        // 5.1、查询订单，分表上有 (user_id, voucher_id) 唯一索引
+        VoucherOrder existing = VoucherOrderSharding.withShard(shard,
+                () -> query().eq("user_id", userId).eq("voucher_id", voucherId).one());
         // 5.2、判断是否存在
-        if (count > 0) {
-            // 用户已经购买过
+        if (existing != null) {
+            // 用户已经购买过，订单状态仍然是已创建
+            orderStatusCache.created(userId, voucherId, existing.getId());
             return Result.fail("该用户已经购买过一次！");
         }
 
@@ -98,13 +245,14 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .eq("voucher_id", voucherId).gt("stock", 0) // where id = ? and stock > 0
                 .update();
         if (!success) {
+            orderStatusCache.failed(userId, voucherId, "库存不足！");
             return Result.fail("库存不足！");
         }
         // 7、创建订单
         VoucherOrder voucherOrder = new VoucherOrder();
 
-        // 7.1、订单id
-        Long orderId = redisIdWorker.nextId("order");
+        // 7.1、订单id，最低几位是分片号
+        Long orderId = redisIdWorker.nextId("order", shard);
         voucherOrder.setId(orderId);
         // 7.2、用户id
         voucherOrder.setUserId(userId);
@@ -112,7 +260,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         voucherOrder.setVoucherId(voucherId);
 
         // 7.4、写入数据库
-        save(voucherOrder);
+        VoucherOrderSharding.withShard(shard, () -> save(voucherOrder));
 
         // 8、返回订单id
         return Result.ok(orderId);
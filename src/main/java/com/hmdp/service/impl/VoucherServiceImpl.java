@@ -7,11 +7,25 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBatch;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -27,14 +41,78 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedisBatch redisBatch;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
+        // 1、查询优惠券信息，优惠券定义很少变化，按店铺缓存；
+        // 不开只读事务，未命中时查主库，避免把副本上还没同步的旧列表缓存 30 分钟
+        List<Voucher> vouchers = cacheClient.queryListWithPassThrough(CACHE_VOUCHER_LIST_KEY, shopId, Voucher.class,
+                this::queryVoucherOfShopFromDb, CACHE_VOUCHER_LIST_TTL, TimeUnit.MINUTES);
+        // 2、秒杀券的库存用 Redis 里的实时库存覆盖，一次 MGET 查完
+        List<Voucher> seckillVouchers = vouchers.stream()
+                .filter(voucher -> voucher.getStock() != null)
+                .collect(Collectors.toList());
+        if (!seckillVouchers.isEmpty()) {
+            List<String> keys = seckillVouchers.stream()
+                    .map(voucher -> SECKILL_STOCK_KEY + voucher.getId())
+                    .collect(Collectors.toList());
+            List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+            List<Voucher> missing = new ArrayList<>();
+            for (int i = 0; i < seckillVouchers.size(); i++) {
+                String stock = stocks != null ? stocks.get(i) : null;
+                if (stock != null) {
+                    seckillVouchers.get(i).setStock(Integer.valueOf(stock));
+                } else {
+                    missing.add(seckillVouchers.get(i));
+                }
+            }
+            // 3、Redis 里还没有库存的（重启、过期），按数据库预热
+            if (!missing.isEmpty()) {
+                warmStock(missing);
+            }
+        }
+        // 4、返回结果
         return Result.ok(vouchers);
     }
 
+    // 从数据库读出实时库存写入 Redis，SET NX 不覆盖并发写入的库存，带过期时间，和数据库的偏差最多保留一个有效期
+    private void warmStock(List<Voucher> vouchers) {
+        Map<Long, SeckillVoucher> seckillVouchers = seckillVoucherService
+                .listByIds(vouchers.stream().map(Voucher::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(SeckillVoucher::getVoucherId, Function.identity()));
+        Expiration expiration = Expiration.from(SECKILL_STOCK_TTL, TimeUnit.MINUTES);
+        redisBatch.pipeline(conn -> vouchers.forEach(voucher -> {
+            SeckillVoucher seckillVoucher = seckillVouchers.get(voucher.getId());
+            if (seckillVoucher != null) {
+                voucher.setStock(seckillVoucher.getStock());
+                conn.set(SECKILL_STOCK_KEY + voucher.getId(), seckillVoucher.getStock().toString(),
+                        expiration, RedisStringCommands.SetOption.ifAbsent());
+            }
+        }));
+    }
+
+    private List<Voucher> queryVoucherOfShopFromDb(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @Transactional
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 事务提交后删除店铺的优惠券列表缓存，提交前删除的话，并发的查询可能又把旧列表缓存回去
+        afterCommit(() -> stringRedisTemplate.delete(CACHE_VOUCHER_LIST_KEY + voucher.getShopId()));
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -44,8 +122,29 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         SeckillVoucher seckillVoucher = new SeckillVoucher();
         seckillVoucher.setVoucherId(voucher.getId());
         seckillVoucher.setStock(voucher.getStock());
+        seckillVoucher.setWaitingRoom(Boolean.TRUE.equals(voucher.getWaitingRoom()));
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后保存秒杀库存到 Redis，并删除店铺的优惠券列表缓存
+        afterCommit(() -> {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString(),
+                    SECKILL_STOCK_TTL, TimeUnit.MINUTES);
+            stringRedisTemplate.delete(CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        });
+    }
+
+    // 在当前事务提交后执行，没有事务时直接执行
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制（Vegas 算法）：
+ * 1、记录最小响应时间作为无排队时的基准
+ * 2、用 limit * (1 - 基准 / 当前响应时间) 估算排队的请求数，排队少就加大并发上限，排队多就减小
+ * 3、超过并发上限的请求直接拒绝，不在线程池、连接池上排队
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // 每隔多少个样本重新探测一次基准响应时间，避免基准一直停留在很久以前的最小值
+    private static final int PROBE_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile int limit;
+
+    // 以下字段只在 synchronized 的 update 里读写
+    private double estimatedLimit;
+    private long rttNoLoad;
+    private int probeCountdown = nextProbeCountdown();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * 尝试占用一个并发名额，成功后必须调用 {@link #release}
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放名额，并用这次请求的响应时间调整并发上限
+     *
+     * @param rttNanos 响应时间，纳秒
+     * @param dropped  请求是否失败（超时、异常），失败时直接减小上限
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inflight.getAndDecrement();
+        update(rttNanos, current, dropped);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private synchronized void update(long rtt, int inflight, boolean dropped) {
+        // 1、定期重置基准响应时间
+        if (--probeCountdown <= 0) {
+            probeCountdown = nextProbeCountdown();
+            rttNoLoad = rtt;
+            return;
+        }
+        if (rttNoLoad == 0 || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+            return;
+        }
+        double log = Math.log10(Math.max(estimatedLimit, 1));
+        double newLimit;
+        if (dropped) {
+            // 2、请求失败，说明已经过载
+            newLimit = estimatedLimit - log;
+        } else {
+            // 3、并发远没有用满时，响应时间说明不了上限够不够，不做调整
+            if (inflight * 2 < estimatedLimit) {
+                return;
+            }
+            // 4、估算排队数，alpha、beta 随上限对数增长
+            double queueSize = Math.ceil(estimatedLimit * (1 - (double) rttNoLoad / rtt));
+            if (queueSize <= 3 * log) {
+                newLimit = estimatedLimit + log;
+            } else if (queueSize >= 6 * log) {
+                newLimit = estimatedLimit - log;
+            } else {
+                return;
+            }
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private static int nextProbeCountdown() {
+        // 加一点随机，避免多个节点同时探测
+        return PROBE_SAMPLES + ThreadLocalRandom.current().nextInt(PROBE_SAMPLES);
+    }
+}
@@ -4,13 +4,16 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -47,20 +50,26 @@ public class CacheClient {
         // 1、根据 id 从 redis 查询商铺缓存
         String key = keyPreFix + id;
         String json = stringRedisTemplate.opsForValue().get(key);
+        CacheMetrics metrics = CacheMetrics.of(keyPreFix);
 
         // 2、判断 redis 里是否存在
         if (StrUtil.isNotBlank(json)) {
             // 3、redis 里存在，直接返回
+            metrics.hit.increment();
             return JSONUtil.toBean(json, type);
         }
         // 经过 isNotBlank 的判断，走到这里，要么是 null，要么是空字符串
         if (json != null) {
             // 不是null，只剩 空字符串 的可能性，直接返回，防止缓存穿透
+            metrics.nullHit.increment();
             return null;
         }
 
         // 4、redis 里不存在，去查数据库
+        metrics.miss.increment();
+        long start = System.nanoTime();
         R r = dbFallback.apply(id);
+        metrics.dbFallback.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         // 5、数据库也不存在，返回错误
         if (r == null) {
@@ -75,18 +84,51 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 缓存一个列表，空列表也照常缓存，不会穿透到数据库
+     */
+    public <R, ID> List<R> queryListWithPassThrough(
+            String keyPreFix, ID id, Class<R> type, Function<ID, List<R>> dbFallback, Long time, TimeUnit unit
+    ) {
+        // 1、从 redis 查询列表缓存
+        String key = keyPreFix + id;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        CacheMetrics metrics = CacheMetrics.of(keyPreFix);
+
+        // 2、存在直接返回
+        if (json != null) {
+            metrics.hit.increment();
+            return JSONUtil.toList(json, type);
+        }
+
+        // 3、不存在，查数据库并写入 redis
+        metrics.miss.increment();
+        long start = System.nanoTime();
+        List<R> list = dbFallback.apply(id);
+        metrics.dbFallback.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        this.set(key, list, time, unit);
+        return list;
+    }
+
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
+    static {
+        // 重建任务的排队数量，持续增长说明重建跟不上过期的速度
+        Metrics.gauge("hmdp.cache.rebuild.queue", (ThreadPoolExecutor) CACHE_REBUILD_EXECUTOR, e -> e.getQueue().size());
+    }
+
     public <R, ID> R queryWithLogicalExpire(
             String keyPreFix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit
     ) {
         // 1、根据 id 从 redis 查询商铺缓存
         String key = keyPreFix + id;
         String json = stringRedisTemplate.opsForValue().get(key);
+        CacheMetrics metrics = CacheMetrics.of(keyPreFix);
 
         // 2、判断 redis 里是否存在
         if (StrUtil.isBlank(json)) {
             // 3、redis 里不存在，直接返回
+            metrics.miss.increment();
             return null;
         }
         // 4、redis 里存在，需要先把json反序列化为对象
@@ -96,8 +138,10 @@ public class CacheClient {
         // 5、判断是否逻辑过期
         if (expireTime.isAfter(LocalDateTime.now())) {
             // 5.1、未过期，直接返回店铺信息
+            metrics.hit.increment();
             return r;
         }
+        metrics.stale.increment();
         // 5.2、已过期，需要缓存重建
         // 6、缓存重建
         // 6.1、获取互斥锁
@@ -109,7 +153,9 @@ public class CacheClient {
             CACHE_REBUILD_EXECUTOR.execute(() -> {
                 try {
                     // 查询数据库
+                    long start = System.nanoTime();
                     R r1 = dbFallback.apply(id);
+                    metrics.dbFallback.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
                     // 写入 redis
                     this.set(key, r1, time, unit);
 
@@ -0,0 +1,50 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 key 前缀统计的缓存指标，每个前缀第一次使用时注册，之后直接复用，记录时不分配对象
+ */
+public class CacheMetrics {
+
+    private static final Map<String, CacheMetrics> METRICS = new ConcurrentHashMap<>();
+
+    final Counter hit;
+    final Counter miss;
+    // 命中了缓存的空值
+    final Counter nullHit;
+    // 命中了逻辑过期的数据
+    final Counter stale;
+    final Timer dbFallback;
+
+    private CacheMetrics(String keyPrefix) {
+        hit = result(keyPrefix, "hit");
+        miss = result(keyPrefix, "miss");
+        nullHit = result(keyPrefix, "null_hit");
+        stale = result(keyPrefix, "stale");
+        dbFallback = Timer.builder("hmdp.cache.db.fallback")
+                .description("缓存未命中时查询数据库的耗时")
+                .tag("prefix", keyPrefix)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    public static CacheMetrics of(String keyPrefix) {
+        // 先 get，已注册的前缀不进入 computeIfAbsent 的加锁路径
+        CacheMetrics metrics = METRICS.get(keyPrefix);
+        return metrics != null ? metrics : METRICS.computeIfAbsent(keyPrefix, CacheMetrics::new);
+    }
+
+    private static Counter result(String keyPrefix, String result) {
+        return Counter.builder("hmdp.cache.requests")
+                .description("缓存查询次数")
+                .tag("prefix", keyPrefix)
+                .tag("result", result)
+                .register(Metrics.globalRegistry);
+    }
+}
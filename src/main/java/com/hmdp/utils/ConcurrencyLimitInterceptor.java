@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String START_TIME_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".startTime";
+    // 全局异常处理把异常转成了 200 的 Result.fail，处理时在请求上设置这个属性，这里按失败计
+    public static final String SERVER_ERROR_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".serverError";
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1、异步请求的第二次分派已经占过名额了
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        // 2、超过并发上限，直接返回 503，让客户端稍后重试
+        if (!limiter.tryAcquire()) {
+            response.setStatus(503);
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(JSONUtil.toJsonStr(Result.fail("系统繁忙，请稍后再试！")));
+            return false;
+        }
+        // 3、记录开始时间，用于计算响应时间
+        request.setAttribute(START_TIME_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        // 异步请求的第一次分派不会调用这里，名额在第二次分派结束时释放
+        Long startTime = (Long) request.getAttribute(START_TIME_ATTRIBUTE);
+        if (startTime == null) {
+            return;
+        }
+        boolean dropped = ex != null || response.getStatus() >= 500
+                || request.getAttribute(SERVER_ERROR_ATTRIBUTE) != null;
+        limiter.release(System.nanoTime() - startTime, dropped);
+    }
+}
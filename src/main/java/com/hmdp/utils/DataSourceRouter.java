@@ -0,0 +1,204 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.DB_STICKY_KEY;
+import static com.hmdp.utils.SystemConstants.DB_STICKY_NEGATIVE_CACHE_MILLIS;
+
+/**
+ * 决定一次查询走主库还是只读副本：
+ * 1、只读事务（@Transactional(readOnly = true)）和 @ReplicaRead 方法里的查询才走副本，其余都走主库
+ * 2、每秒检查一次副本的复制延迟，延迟超过阈值、复制中断或连不上时，读请求全部回到主库
+ * 3、登录用户写过数据后的一段时间内，这个用户的查询都走主库，标记存在 Redis 里，所有节点都能看到，
+ *    一个 @ReplicaRead 方法里只查一次标记，查到的结果不管有没有写过都在本地缓存一段时间
+ */
+@Slf4j
+public class DataSourceRouter {
+
+    private static final ThreadLocal<ReplicaScope> REPLICA_READ = new ThreadLocal<>();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 没有配置副本时为 null，所有查询都走主库
+    private final DataSource replicaDataSource;
+
+    private final long maxLagSeconds;
+
+    private final long stickySeconds;
+
+    // 本节点上刚写过数据的用户，命中时不用再查 Redis
+    private final Cache<Long, Boolean> stickyUsers;
+
+    // 最近查过、没有写过数据的用户，过期时间短，其他节点上的写很快就能看到
+    private final Cache<Long, Boolean> nonStickyUsers;
+
+    // 副本的复制延迟（秒），-1 表示复制中断或连不上
+    private volatile long replicaLag = -1;
+
+    private volatile boolean replicaHealthy;
+
+    public DataSourceRouter(StringRedisTemplate stringRedisTemplate, DataSource replicaDataSource,
+                            long maxLagSeconds, long stickySeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.replicaDataSource = replicaDataSource;
+        this.maxLagSeconds = maxLagSeconds;
+        this.stickySeconds = stickySeconds;
+        this.stickyUsers = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(stickySeconds, TimeUnit.SECONDS)
+                .build();
+        this.nonStickyUsers = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(DB_STICKY_NEGATIVE_CACHE_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+        Metrics.gauge("hmdp.db.replica.lag", this, router -> router.replicaLag);
+        Metrics.gauge("hmdp.db.replica.healthy", this, router -> router.replicaHealthy ? 1 : 0);
+    }
+
+    public DataSource getReplicaDataSource() {
+        return replicaDataSource;
+    }
+
+    /**
+     * 进入 @ReplicaRead 方法，返回是否已经在外层的 @ReplicaRead 方法里，嵌套调用沿用外层查到的标记
+     */
+    public static boolean enterReplicaRead() {
+        if (REPLICA_READ.get() != null) {
+            return true;
+        }
+        REPLICA_READ.set(new ReplicaScope());
+        return false;
+    }
+
+    /**
+     * 离开 @ReplicaRead 方法，最外层离开时清除
+     */
+    public static void exitReplicaRead(boolean nested) {
+        if (!nested) {
+            REPLICA_READ.remove();
+        }
+    }
+
+    /**
+     * 当前的查询是否走副本
+     */
+    public boolean useReplica() {
+        // 1、副本不可用
+        if (!replicaHealthy) {
+            return false;
+        }
+        // 2、读写事务里的查询一律走主库，保证事务内读到自己的写；
+        // 只读事务整个事务只取一次连接，这里也只走一次
+        ReplicaScope scope = REPLICA_READ.get();
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return false;
+            }
+        } else if (scope == null) {
+            return false;
+        }
+        // 3、当前用户刚写过数据，@ReplicaRead 方法里的多条查询只查一次标记
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            return true;
+        }
+        if (scope == null) {
+            return !isSticky(user.getId());
+        }
+        if (scope.sticky == null) {
+            scope.sticky = isSticky(user.getId());
+        }
+        return !scope.sticky;
+    }
+
+    /**
+     * 记录用户写过数据，记录失败不影响写操作本身
+     */
+    public void markWrite(Long userId) {
+        if (replicaDataSource == null) {
+            return;
+        }
+        stickyUsers.put(userId, Boolean.TRUE);
+        nonStickyUsers.invalidate(userId);
+        // 同一个 @ReplicaRead 方法里写了之后的查询也要走主库
+        ReplicaScope scope = REPLICA_READ.get();
+        if (scope != null) {
+            scope.sticky = Boolean.TRUE;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(DB_STICKY_KEY + userId, "1", stickySeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("记录用户写操作失败，userId: {}", userId, e);
+        }
+    }
+
+    private boolean isSticky(Long userId) {
+        if (stickyUsers.getIfPresent(userId) != null) {
+            return true;
+        }
+        if (nonStickyUsers.getIfPresent(userId) != null) {
+            return false;
+        }
+        try {
+            boolean sticky = Boolean.TRUE.equals(stringRedisTemplate.hasKey(DB_STICKY_KEY + userId));
+            // 其他节点写的标记只缓存到 Redis 里标记过期为止，最多 stickySeconds
+            (sticky ? stickyUsers : nonStickyUsers).put(userId, Boolean.TRUE);
+            return sticky;
+        } catch (Exception e) {
+            // 查不到标记时保守地走主库
+            return true;
+        }
+    }
+
+    /**
+     * 检查副本的复制延迟
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 1000)
+    public void checkReplicaLag() {
+        if (replicaDataSource == null) {
+            return;
+        }
+        long lag;
+        try (Connection connection = replicaDataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")) {
+            if (!rs.next()) {
+                // 不是复制的从库，比如开发环境直接指向主库
+                lag = 0;
+            } else {
+                lag = rs.getLong("Seconds_Behind_Master");
+                if (rs.wasNull()) {
+                    lag = -1;
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("检查副本延迟失败", e);
+            lag = -1;
+        }
+        boolean healthy = lag >= 0 && lag <= maxLagSeconds;
+        if (healthy != replicaHealthy) {
+            log.warn("只读副本{}，复制延迟：{} 秒", healthy ? "恢复使用" : "暂停使用", lag);
+        }
+        replicaLag = lag;
+        replicaHealthy = healthy;
+    }
+
+    // 一次 @ReplicaRead 调用的状态，sticky 为 null 表示还没查过标记
+    private static class ReplicaScope {
+        private Boolean sticky;
+    }
+}
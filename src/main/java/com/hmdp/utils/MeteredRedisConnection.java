@@ -0,0 +1,227 @@
+package com.hmdp.utils;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.DefaultedRedisConnection;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisHyperLogLogCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisListCommands;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.connection.RedisSetCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.Subscription;
+
+import java.util.List;
+
+/**
+ * 计数用的 RedisConnection 包装：
+ * DefaultedRedisConnection 的每个命令方法都是先取 xxxCommands() 再调用一次对应命令，
+ * 所以只要在这些取命令接口的方法里计数，就等于每条命令计数一次，不需要代理和反射。
+ * 不走 xxxCommands() 的命令（事务、发布订阅、execute 等）在各自的方法里计数
+ */
+class MeteredRedisConnection implements DefaultedRedisConnection {
+
+    private final RedisConnection delegate;
+    private final Runnable counter;
+
+    MeteredRedisConnection(RedisConnection delegate, Runnable counter) {
+        this.delegate = delegate;
+        this.counter = counter;
+    }
+
+    @Override
+    public RedisGeoCommands geoCommands() {
+        counter.run();
+        return delegate.geoCommands();
+    }
+
+    @Override
+    public RedisHashCommands hashCommands() {
+        counter.run();
+        return delegate.hashCommands();
+    }
+
+    @Override
+    public RedisHyperLogLogCommands hyperLogLogCommands() {
+        counter.run();
+        return delegate.hyperLogLogCommands();
+    }
+
+    @Override
+    public RedisKeyCommands keyCommands() {
+        counter.run();
+        return delegate.keyCommands();
+    }
+
+    @Override
+    public RedisListCommands listCommands() {
+        counter.run();
+        return delegate.listCommands();
+    }
+
+    @Override
+    public RedisSetCommands setCommands() {
+        counter.run();
+        return delegate.setCommands();
+    }
+
+    @Override
+    public RedisScriptingCommands scriptingCommands() {
+        counter.run();
+        return delegate.scriptingCommands();
+    }
+
+    @Override
+    public RedisServerCommands serverCommands() {
+        counter.run();
+        return delegate.serverCommands();
+    }
+
+    @Override
+    public RedisStreamCommands streamCommands() {
+        counter.run();
+        return delegate.streamCommands();
+    }
+
+    @Override
+    public RedisStringCommands stringCommands() {
+        counter.run();
+        return delegate.stringCommands();
+    }
+
+    @Override
+    public RedisZSetCommands zSetCommands() {
+        counter.run();
+        return delegate.zSetCommands();
+    }
+
+    @Override
+    public Object execute(String command, byte[]... args) {
+        counter.run();
+        return delegate.execute(command, args);
+    }
+
+    @Override
+    public void multi() {
+        counter.run();
+        delegate.multi();
+    }
+
+    @Override
+    public List<Object> exec() {
+        counter.run();
+        return delegate.exec();
+    }
+
+    @Override
+    public void discard() {
+        counter.run();
+        delegate.discard();
+    }
+
+    @Override
+    public void watch(byte[]... keys) {
+        counter.run();
+        delegate.watch(keys);
+    }
+
+    @Override
+    public void unwatch() {
+        counter.run();
+        delegate.unwatch();
+    }
+
+    @Override
+    public Long publish(byte[] channel, byte[] message) {
+        counter.run();
+        return delegate.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(MessageListener listener, byte[]... channels) {
+        counter.run();
+        delegate.subscribe(listener, channels);
+    }
+
+    @Override
+    public void pSubscribe(MessageListener listener, byte[]... patterns) {
+        counter.run();
+        delegate.pSubscribe(listener, patterns);
+    }
+
+    @Override
+    public void select(int dbIndex) {
+        counter.run();
+        delegate.select(dbIndex);
+    }
+
+    @Override
+    public byte[] echo(byte[] message) {
+        counter.run();
+        return delegate.echo(message);
+    }
+
+    @Override
+    public String ping() {
+        counter.run();
+        return delegate.ping();
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return delegate.isSubscribed();
+    }
+
+    @Override
+    public Subscription getSubscription() {
+        return delegate.getSubscription();
+    }
+
+    @Override
+    public void close() throws DataAccessException {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public Object getNativeConnection() {
+        return delegate.getNativeConnection();
+    }
+
+    @Override
+    public boolean isQueueing() {
+        return delegate.isQueueing();
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return delegate.isPipelined();
+    }
+
+    @Override
+    public void openPipeline() {
+        delegate.openPipeline();
+    }
+
+    @Override
+    public List<Object> closePipeline() throws RedisPipelineException {
+        return delegate.closePipeline();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 统计 Redis 命令数的 StringRedisTemplate：
+ * 在连接交给业务代码之前包一层 MeteredRedisConnection，每执行一条命令计数一次（pipeline 里的命令也逐条计数），
+ * 同时累加到当前线程的计数器上，用于统计每个请求执行的命令数；
+ * 只有被追踪的请求才会再包一层代理记录每条命令的耗时，普通请求不走反射
+ */
+public class MeteredStringRedisTemplate extends StringRedisTemplate {
+
+    private static final Counter REDIS_COMMANDS = Counter.builder("hmdp.redis.commands")
+            .description("Redis 命令数")
+            .register(Metrics.globalRegistry);
+
+    private static final ThreadLocal<int[]> REQUEST_COMMANDS = ThreadLocal.withInitial(() -> new int[1]);
+
+    public MeteredStringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    /**
+     * 清零当前线程的命令计数，请求开始时调用
+     */
+    public static void resetRequestCommands() {
+        REQUEST_COMMANDS.get()[0] = 0;
+    }
+
+    /**
+     * 当前线程从上次清零以来执行的命令数
+     */
+    public static int getRequestCommands() {
+        return REQUEST_COMMANDS.get()[0];
+    }
+
+    private static void countCommand() {
+        REDIS_COMMANDS.increment();
+        REQUEST_COMMANDS.get()[0]++;
+    }
+
+    @Override
+    protected RedisConnection preProcessConnection(RedisConnection connection, boolean existingConnection) {
+        RedisConnection metered = new MeteredRedisConnection(connection, MeteredStringRedisTemplate::countCommand);
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            metered = traced(metered, trace);
+        }
+        return super.preProcessConnection(metered, existingConnection);
+    }
+
+    private static RedisConnection traced(RedisConnection connection, RequestTrace trace) {
+        return (RedisConnection) Proxy.newProxyInstance(
+                RedisConnection.class.getClassLoader(),
+                new Class<?>[]{RedisConnection.class},
+                (proxy, method, args) -> {
+                    if (!isCommand(method)) {
+                        return invoke(connection, method, args);
+                    }
+                    // pipeline 中的命令在这里只是入队，耗时要看整个 executePipelined
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(connection, method, args);
+                    } finally {
+                        trace.recordRedis(method.getName(), System.nanoTime() - start);
+                    }
+                });
+    }
+
+    private static Object invoke(RedisConnection connection, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    // RedisConnection 自己声明的是连接管理方法（close、openPipeline 等），命令都来自 Redis*Commands 接口
+    private static boolean isCommand(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        return declaringClass != RedisConnection.class && declaringClass != Object.class;
+    }
+}
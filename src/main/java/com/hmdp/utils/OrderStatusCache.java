@@ -0,0 +1,158 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Data;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 用户最近订单的状态缓存，秒杀期间的轮询不访问数据库：
+ * 1、每个用户一个 hash，order:status:{userId}，字段是优惠券id，值是 状态:订单id或失败原因
+ * 2、下单流程在受理、创建成功、失败时写入，保留 ORDER_STATUS_TTL 小时，超过保留期的订单才查数据库
+ * 3、本地缓存 1 秒，同一个用户的高频轮询在本节点就能拦下
+ * 4、用脚本写入，状态只往前走：CREATED 不会被 FAILED、PENDING、NONE 覆盖，NONE 只在没有状态时写入；
+ *    PENDING 带着受理时间，超过 ORDER_STATUS_PENDING_TIMEOUT 还没有结果的由查询方查库确认
+ */
+@Component
+public class OrderStatusCache {
+
+    // 本地缓存的条目数量上限
+    private static final long ORDER_STATUS_CACHE_MAX_SIZE = 100000;
+
+    private static final DefaultRedisScript<String> STATUS_SCRIPT;
+
+    static {
+        STATUS_SCRIPT = new DefaultRedisScript<>();
+        STATUS_SCRIPT.setLocation(new ClassPathResource("order_status.lua"));
+        STATUS_SCRIPT.setResultType(String.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Cache<String, OrderStatus> cache = Caffeine.newBuilder()
+            .maximumSize(ORDER_STATUS_CACHE_MAX_SIZE)
+            .expireAfterWrite(ORDER_STATUS_LOCAL_TTL, TimeUnit.MILLISECONDS)
+            .build();
+
+    public OrderStatusCache(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public enum State {
+        // 已受理，正在创建订单
+        PENDING,
+        // 订单创建成功
+        CREATED,
+        // 下单失败
+        FAILED,
+        // 没有订单，查过数据库后写入，避免反复查库
+        NONE
+    }
+
+    public void pending(Long userId, Long voucherId) {
+        put(userId, voucherId, new OrderStatus(State.PENDING, null, null, System.currentTimeMillis()), null);
+    }
+
+    public void created(Long userId, Long voucherId, Long orderId) {
+        put(userId, voucherId, new OrderStatus(State.CREATED, orderId, null, null), null);
+    }
+
+    public void failed(Long userId, Long voucherId, String reason) {
+        put(userId, voucherId, new OrderStatus(State.FAILED, null, reason, null), null);
+    }
+
+    public void none(Long userId, Long voucherId) {
+        put(userId, voucherId, new OrderStatus(State.NONE, null, null, null), null);
+    }
+
+    /**
+     * 超时的 PENDING 查库也没有订单时调用，只有状态还是这个 PENDING 时才改为失败，
+     * 期间重新下单写入的新状态不受影响
+     */
+    public void failPending(Long userId, Long voucherId, OrderStatus pending, String reason) {
+        put(userId, voucherId, new OrderStatus(State.FAILED, null, reason, null), pending);
+    }
+
+    /**
+     * 查询订单状态，本地缓存和 Redis 都没有时返回 null，由调用方查数据库
+     */
+    public OrderStatus get(Long userId, Long voucherId) {
+        // 1、查询本地缓存
+        String localKey = userId + ":" + voucherId;
+        OrderStatus status = cache.getIfPresent(localKey);
+        if (status != null) {
+            return status;
+        }
+        // 2、查询 Redis
+        Object value = stringRedisTemplate.opsForHash().get(ORDER_STATUS_KEY + userId, voucherId.toString());
+        if (value == null) {
+            return null;
+        }
+        status = OrderStatus.decode(value.toString());
+        cache.put(localKey, status);
+        return status;
+    }
+
+    private void put(Long userId, Long voucherId, OrderStatus status, OrderStatus expected) {
+        // 1、用脚本比较并写入，写 hash 和续期一次往返完成，超过保留期没有新订单的用户整个 hash 过期
+        String encoded = status.encode();
+        String stored = stringRedisTemplate.execute(
+                STATUS_SCRIPT,
+                Collections.singletonList(ORDER_STATUS_KEY + userId),
+                voucherId.toString(),
+                encoded,
+                String.valueOf(TimeUnit.HOURS.toSeconds(ORDER_STATUS_TTL)),
+                expected == null ? "" : expected.encode()
+        );
+        // 2、本节点立即看到 Redis 里实际的状态，没有写入时是原来的状态，其他节点最多晚一个本地缓存周期
+        String localKey = userId + ":" + voucherId;
+        if (stored == null) {
+            cache.invalidate(localKey);
+        } else {
+            cache.put(localKey, stored.equals(encoded) ? status : OrderStatus.decode(stored));
+        }
+    }
+
+    @Data
+    public static class OrderStatus {
+        private final State state;
+        private final Long orderId;
+        private final String message;
+        // PENDING 的受理时间，毫秒时间戳
+        private final Long since;
+
+        /**
+         * 受理超过 ORDER_STATUS_PENDING_TIMEOUT 还没有结果，下单的节点可能已经挂了
+         */
+        public boolean isStalePending() {
+            return state == State.PENDING
+                    && (since == null || System.currentTimeMillis() - since > ORDER_STATUS_PENDING_TIMEOUT);
+        }
+
+        String encode() {
+            String payload = orderId != null ? orderId.toString() : since != null ? since.toString() : message;
+            return payload == null ? state.name() : state.name() + ":" + payload;
+        }
+
+        static OrderStatus decode(String value) {
+            int colon = value.indexOf(':');
+            State state = State.valueOf(colon < 0 ? value : value.substring(0, colon));
+            String payload = colon < 0 ? null : value.substring(colon + 1);
+            if (state == State.CREATED) {
+                return new OrderStatus(state, Long.valueOf(payload), null, null);
+            }
+            if (state == State.PENDING) {
+                return new OrderStatus(state, null, null, payload == null ? null : Long.valueOf(payload));
+            }
+            return new OrderStatus(state, null, payload, null);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.*;
+
+/**
+ * 接口限流，由 {@link RateLimitInterceptor} 处理，同一个接口可以叠加多个维度的限流
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /**
+     * 限流名称，用于拼接 Redis key
+     */
+    String name();
+
+    /**
+     * 每个周期允许的请求数
+     */
+    int permits();
+
+    /**
+     * 周期，单位秒
+     */
+    int period() default 1;
+
+    /**
+     * 允许连续突发的请求数
+     */
+    int burst() default 1;
+
+    /**
+     * 限流维度
+     */
+    Dimension by() default Dimension.IP;
+
+    /**
+     * 按请求参数限流时的参数名
+     */
+    String param() default "";
+
+    enum Dimension {
+        IP, USER, PARAM
+    }
+
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @Documented
+    @interface List {
+        RateLimit[] value();
+    }
+}
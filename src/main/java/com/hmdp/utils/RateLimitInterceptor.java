@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1、只处理加了 @RateLimit 的接口，异步请求的第二次分派已经检查过了
+        if (!(handler instanceof HandlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        Set<RateLimit> limits = AnnotatedElementUtils.findMergedRepeatableAnnotations(
+                ((HandlerMethod) handler).getMethod(), RateLimit.class);
+        // 2、依次检查每个维度，任意一个超限就拒绝
+        for (RateLimit limit : limits) {
+            String subject = resolveSubject(limit, request);
+            if (subject == null) {
+                continue;
+            }
+            long waitMillis = rateLimiter.tryAcquire(limit.name() + ":" + subject,
+                    limit.permits(), limit.period(), limit.burst());
+            if (waitMillis > 0) {
+                // 3、返回 429 和建议的重试时间
+                response.setStatus(429);
+                response.setHeader("Retry-After", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(waitMillis) + 1));
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+                response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求太频繁，请稍后再试！")));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String resolveSubject(RateLimit limit, HttpServletRequest request) {
+        switch (limit.by()) {
+            case USER:
+                UserDTO user = UserHolder.getUser();
+                return user == null ? null : user.getId().toString();
+            case PARAM:
+                String value = request.getParameter(limit.param());
+                return StrUtil.isBlank(value) ? null : value;
+            default:
+                // 经过可信代理的请求，Tomcat 已经按 X-Forwarded-For 换成了客户端 IP（server.forward-headers-strategy）
+                return request.getRemoteAddr();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 基于 GCRA 的分布式限流器：
+ * 1、每次判断只执行一次 Lua 脚本
+ * 2、被拒绝的 key 在本地记住可以重试的时间，在这之前的请求直接本地拒绝，不再访问 Redis
+ */
+@Component
+public class RateLimiter {
+
+    // 本地记录的被拒绝 key 数量上限
+    private static final long REJECTED_CACHE_MAX_SIZE = 100000;
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // key -> 可以重试的时间戳
+    private final Cache<String, Long> rejected = Caffeine.newBuilder()
+            .maximumSize(REJECTED_CACHE_MAX_SIZE)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    public RateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 尝试获取一次许可
+     *
+     * @param key     限流 key
+     * @param permits 每个周期允许的请求数
+     * @param period  周期，单位秒
+     * @param burst   允许连续突发的请求数
+     * @return 0 表示放行，否则为还需要等待的毫秒数
+     */
+    public long tryAcquire(String key, int permits, int period, int burst) {
+        long now = System.currentTimeMillis();
+        // 1、本地预判，还没到重试时间的直接拒绝
+        Long retryAt = rejected.getIfPresent(key);
+        if (retryAt != null && retryAt > now) {
+            return retryAt - now;
+        }
+        // 2、执行 Lua 脚本
+        long interval = TimeUnit.SECONDS.toMillis(period) / permits;
+        Long waitMillis = stringRedisTemplate.execute(
+                RATE_LIMIT_SCRIPT,
+                Collections.singletonList(RATE_LIMIT_KEY + key),
+                String.valueOf(now), String.valueOf(interval), String.valueOf(interval * burst)
+        );
+        if (waitMillis == null || waitMillis <= 0) {
+            return 0;
+        }
+        // 3、记住重试时间
+        rejected.put(key, now + waitMillis);
+        return waitMillis;
+    }
+}
@@ -0,0 +1,158 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+
+/**
+ * {@link CacheClient} 的非阻塞版本：
+ * 1、Redis 读写走 Lettuce 共享的响应式连接，并发的查询在一条连接上流水线发送，不占用连接池
+ * 2、数据库查询是阻塞的，放到 boundedElastic 调度器上执行
+ * 3、查询结果为空时返回空的 Mono
+ */
+@Slf4j
+@Component
+public class ReactiveCacheClient {
+
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    public ReactiveCacheClient(ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+    }
+
+    public Mono<Boolean> set(String key, Object value, Long time, TimeUnit unit) {
+        return reactiveStringRedisTemplate.opsForValue()
+                .set(key, JSONUtil.toJsonStr(value), Duration.ofMillis(unit.toMillis(time)));
+    }
+
+    public Mono<Boolean> setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        // 设置逻辑过期，用另外一个类，把逻辑过期时间也包装进去，然后一起写到redis里去
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        return reactiveStringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+    }
+
+    public <R, ID> Mono<R> queryWithPassThrough(
+            String keyPreFix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit
+    ) {
+        String key = keyPreFix + id;
+        CacheMetrics metrics = CacheMetrics.of(keyPreFix);
+        // 1、根据 id 从 redis 查询缓存
+        return reactiveStringRedisTemplate.opsForValue().get(key)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(json -> {
+                    if (!json.isPresent()) {
+                        metrics.miss.increment();
+                        return loadAndCache(key, id, dbFallback, time, unit, metrics);
+                    }
+                    // 2、redis 里存在，空字符串是缓存的空值，防止缓存穿透
+                    if (StrUtil.isBlank(json.get())) {
+                        metrics.nullHit.increment();
+                        return Mono.empty();
+                    }
+                    metrics.hit.increment();
+                    return Mono.just(JSONUtil.toBean(json.get(), type));
+                });
+    }
+
+    // 查询数据库并写入 redis，数据库也不存在时缓存空值
+    private <R, ID> Mono<R> loadAndCache(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+                                         CacheMetrics metrics) {
+        // 3、redis 里不存在，在 boundedElastic 上查数据库
+        return Mono.fromCallable(() -> timedApply(dbFallback, id, metrics))
+                .subscribeOn(Schedulers.boundedElastic())
+                // 4、数据库存在，写入 redis
+                .flatMap(r -> set(key, r, time, unit).thenReturn(r))
+                // 5、数据库也不存在，将空字符串写入 redis
+                .switchIfEmpty(Mono.defer(() -> reactiveStringRedisTemplate.opsForValue()
+                        .set(key, "", Duration.ofMinutes(CACHE_NULL_TTL))
+                        .then(Mono.empty())));
+    }
+
+    /**
+     * 缓存一个不过期的列表，比如几乎不变的商铺类型，数据变化时由调用方删除缓存；空列表也照常缓存
+     */
+    public <R> Mono<List<R>> queryListWithPassThrough(String key, Class<R> type, Supplier<List<R>> dbFallback) {
+        CacheMetrics metrics = CacheMetrics.of(key);
+        // 1、从 redis 查询列表缓存，存在直接返回
+        return reactiveStringRedisTemplate.opsForValue().get(key)
+                .doOnNext(json -> metrics.hit.increment())
+                .map(json -> JSONUtil.toList(json, type))
+                // 2、不存在，在 boundedElastic 上查数据库并写入 redis
+                .switchIfEmpty(Mono.defer(() -> {
+                    metrics.miss.increment();
+                    return Mono.fromCallable(() -> timedApply(id -> dbFallback.get(), null, metrics))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(list -> reactiveStringRedisTemplate.opsForValue()
+                                    .set(key, JSONUtil.toJsonStr(list))
+                                    .thenReturn(list));
+                }));
+    }
+
+    public <R, ID> Mono<R> queryWithLogicalExpire(
+            String keyPreFix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit
+    ) {
+        String key = keyPreFix + id;
+        CacheMetrics metrics = CacheMetrics.of(keyPreFix);
+        // 1、根据 id 从 redis 查询缓存，不存在直接返回空
+        return reactiveStringRedisTemplate.opsForValue().get(key)
+                .filter(StrUtil::isNotBlank)
+                .switchIfEmpty(Mono.fromRunnable(metrics.miss::increment))
+                .flatMap(json -> {
+                    // 2、反序列化，未过期直接返回
+                    RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+                    R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+                    if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                        metrics.hit.increment();
+                        return Mono.just(r);
+                    }
+                    metrics.stale.increment();
+                    // 3、已过期，拿到互斥锁的请求在后台重建缓存，不管成没成功，都先返回已过期的数据
+                    String lockKey = LOCK_SHOP_KEY + id;
+                    return reactiveStringRedisTemplate.opsForValue()
+                            .setIfAbsent(lockKey, "1", Duration.ofSeconds(10))
+                            .doOnNext(isLock -> {
+                                if (isLock) {
+                                    rebuild(key, lockKey, id, dbFallback, time, unit, metrics);
+                                }
+                            })
+                            .thenReturn(r);
+                });
+    }
+
+    private <R, ID> void rebuild(String key, String lockKey, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+                                 CacheMetrics metrics) {
+        Mono.fromCallable(() -> timedApply(dbFallback, id, metrics))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(r -> setWithLogicalExpire(key, r, time, unit))
+                .doFinally(signal -> reactiveStringRedisTemplate.delete(lockKey).subscribe())
+                .subscribe(null, e -> log.error("缓存重建失败，key: {}", key, e));
+    }
+
+    private static <R, ID> R timedApply(Function<ID, R> dbFallback, ID id, CacheMetrics metrics) {
+        long start = System.nanoTime();
+        try {
+            return dbFallback.apply(id);
+        } finally {
+            metrics.dbFallback.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按 {@link DataSourceRouter} 的判断在主库和只读副本之间选择连接。
+ * 事务开始时还不知道是不是只读事务，所以真正执行 SQL 时才取连接、才决定走哪个库
+ */
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final DataSource primary;
+
+    // 没有配置副本时为 null
+    private final DataSource replica;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, DataSourceRouter router) {
+        this.primary = primary;
+        this.replica = replica;
+        // 没有配置副本时，副本也指向主库
+        Map<Object, Object> targets = new HashMap<>(4);
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica != null ? replica : primary);
+        AbstractRoutingDataSource routing = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return router.useReplica() ? REPLICA : PRIMARY;
+            }
+        };
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        setTargetDataSource(routing);
+        afterPropertiesSet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (replica instanceof Closeable) {
+            ((Closeable) replica).close();
+        }
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 把多条 Redis 命令合并成一次网络往返：
+ * 1、{@link #pipeline} 在一次 pipeline 里发送所有命令，按顺序返回每条命令的结果
+ * 2、{@link #evalSha} 在 pipeline 里用 EVALSHA 执行脚本，只发送脚本的 SHA1。
+ *    Redis 里还没有这个脚本时（第一次使用、Redis 重启），加载脚本后把整个 pipeline 重放一次，
+ *    所以 pipeline 里的命令必须可以重复执行
+ * 单独执行一个脚本时直接用 StringRedisTemplate.execute，它本身就是 EVALSHA 失败再 EVAL
+ */
+@Component
+public class RedisBatch {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 在 pipeline 里用过的脚本，NOSCRIPT 时全部重新加载
+    private final Set<DefaultRedisScript<?>> scripts = ConcurrentHashMap.newKeySet();
+
+    public RedisBatch(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 在一次 pipeline 里执行命令，返回每条命令的结果
+     */
+    public List<Object> pipeline(Consumer<StringRedisConnection> commands) {
+        try {
+            return execute(commands);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            loadScripts();
+            return execute(commands);
+        }
+    }
+
+    /**
+     * 在 pipeline 里执行脚本，只能在 {@link #pipeline} 的回调里调用
+     */
+    public void evalSha(StringRedisConnection conn, DefaultRedisScript<?> script, List<String> keys, String... args) {
+        scripts.add(script);
+        String[] keysAndArgs = new String[keys.size() + args.length];
+        keys.toArray(keysAndArgs);
+        System.arraycopy(args, 0, keysAndArgs, keys.size(), args.length);
+        conn.evalSha(script.getSha1(), ReturnType.fromJavaType(script.getResultType()), keys.size(), keysAndArgs);
+    }
+
+    private List<Object> execute(Consumer<StringRedisConnection> commands) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            commands.accept((StringRedisConnection) connection);
+            return null;
+        });
+    }
+
+    private void loadScripts() {
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            scripts.forEach(script -> connection.scriptingCommands()
+                    .scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,6 +5,12 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_USER_TOKENS_KEY = "login:tokens:";
+    public static final Long LOGIN_USER_REFRESH_TTL = 20L;
+    public static final Long LOGIN_USER_LOCAL_TTL = 60L;
+    public static final String LOGIN_INVALIDATE_CHANNEL = "login:invalidate";
+    public static final String LOGIN_VERSION_KEY = "login:version";
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
     public static final String CACHE_TYPE_KEY = "cache:type";
     public static final Long CACHE_NULL_TTL = 2L;
 
@@ -14,9 +20,43 @@ public class RedisConstants {
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    public static final String CACHE_VOUCHER_LIST_KEY = "cache:voucher:list:";
+    public static final Long CACHE_VOUCHER_LIST_TTL = 30L;
+
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final Long SECKILL_STOCK_TTL = 30L;
+    public static final String SECKILL_QUEUE_SEQ_KEY = "seckill:queue:seq:";
+    public static final String SECKILL_QUEUE_POSITION_KEY = "seckill:queue:position:";
+    public static final String SECKILL_QUEUE_ADMITTED_KEY = "seckill:queue:admitted:";
+    public static final String SECKILL_QUEUE_ACTIVE_KEY = "seckill:queue:active";
+    public static final String SECKILL_QUEUE_ADMIT_KEY = "seckill:queue:admit:";
+    public static final Long SECKILL_QUEUE_TTL = 24L;
+    public static final String ORDER_STATUS_KEY = "order:status:";
+    public static final Long ORDER_STATUS_TTL = 72L;
+    public static final Long ORDER_STATUS_LOCAL_TTL = 1000L;
+    public static final Long ORDER_STATUS_PENDING_TIMEOUT = 30000L;
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked:delta";
+    public static final String BLOG_LIKED_FLUSHING_KEY = "blog:liked:delta:flushing";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_TIME_KEY = "blog:hot:time";
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final String FANS_KEY = "fans:";
+    public static final String FOLLOWS_PENDING_KEY = "follows:pending";
+    public static final String FOLLOWS_LOADED_KEY = "follows:loaded";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:out:";
+    public static final String FEED_BIG_V_KEY = "feed:bigv";
+    public static final String FEED_ACTIVE_KEY = "feed:active";
+    public static final String FEED_ARCHIVED_KEY = "feed:archived";
+    public static final String FEED_PUSH_PENDING_KEY = "feed:push:pending";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String USER_SIGN_ARCHIVED_KEY = "sign:archived";
+    public static final String UV_SHOP_KEY = "uv:shop:";
+    public static final String UV_BLOG_KEY = "uv:blog:";
+    public static final Long UV_TTL = 35L;
+    public static final Long UV_MERGED_TTL = 10L;
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
+    public static final String DB_STICKY_KEY = "db:sticky:";
 }
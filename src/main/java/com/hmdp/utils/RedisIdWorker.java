@@ -1,5 +1,7 @@
 package com.hmdp.utils;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
@@ -7,6 +9,8 @@ import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class RedisIdWorker {
@@ -17,10 +21,38 @@ public class RedisIdWorker {
     // 序列号位数
     private static final int COUNT_BITS = 32;
 
+    // 分片号位数，带分片号的id用序列号的最低几位存分片号
+    private static final int SHARD_BITS = 4;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    // 每个业务前缀生成的id数量
+    private final Map<String, Counter> generated = new ConcurrentHashMap<>();
+
     public Long nextId(String keyPrefix) {
+        return generate(keyPrefix, COUNT_BITS);
+    }
+
+    /**
+     * 生成带分片号的id：时间戳 + 序列号 + 分片号，按id查询时用 {@link #shardOf} 取出分片号
+     */
+    public Long nextId(String keyPrefix, int shard) {
+        if (shard < 0 || shard >= 1 << SHARD_BITS) {
+            throw new IllegalArgumentException("分片号超出范围：" + shard);
+        }
+        return generate(keyPrefix, COUNT_BITS - SHARD_BITS) << SHARD_BITS | shard;
+    }
+
+    /**
+     * 取出 {@link #nextId(String, int)} 生成的id里的分片号
+     */
+    public static int shardOf(long id) {
+        return (int) (id & ((1 << SHARD_BITS) - 1));
+    }
+
+    // 时间戳左移 countBits 位，拼上当天的序列号
+    private long generate(String keyPrefix, int countBits) {
         // 1、生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
@@ -32,8 +64,15 @@ public class RedisIdWorker {
         // 2.2、自增长
         long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
 
+        Counter counter = generated.get(keyPrefix);
+        if (counter == null) {
+            counter = generated.computeIfAbsent(keyPrefix,
+                    prefix -> Counter.builder("hmdp.id.generated").tag("prefix", prefix).register(Metrics.globalRegistry));
+        }
+        counter.increment();
+
         // 3、拼接并返回
-        return timeStamp << 32 | count;
+        return timeStamp << countBits | count;
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,70 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * Lettuce 连接池的监控指标：使用中、空闲、等待借连接的线程数，利用率和借连接的等待时间。
+ * 连接池在第一次借连接时才创建，所以每次采集时从 commons-pool2 注册的 JMX MBean 读取
+ */
+@Slf4j
+@Component
+public class RedisPoolMetrics implements MeterBinder {
+
+    private static final ObjectName POOL_NAMES;
+
+    static {
+        try {
+            POOL_NAMES = new ObjectName("org.apache.commons.pool2:type=GenericObjectPool,*");
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "hmdp.redis.pool.active", "使用中的连接数", "NumActive", Double::sum);
+        gauge(registry, "hmdp.redis.pool.idle", "空闲的连接数", "NumIdle", Double::sum);
+        gauge(registry, "hmdp.redis.pool.waiters", "等待借连接的线程数", "NumWaiters", Double::sum);
+        gauge(registry, "hmdp.redis.pool.max", "连接数上限", "MaxTotal", Double::sum);
+        gauge(registry, "hmdp.redis.pool.borrow.wait.mean", "借连接的平均等待时间（毫秒）", "MeanBorrowWaitTimeMillis", Math::max);
+        gauge(registry, "hmdp.redis.pool.borrow.wait.max", "借连接的最长等待时间（毫秒）", "MaxBorrowWaitTimeMillis", Math::max);
+        Gauge.builder("hmdp.redis.pool.utilization", this, metrics -> {
+            double max = metrics.read("MaxTotal", Double::sum);
+            return max > 0 ? metrics.read("NumActive", Double::sum) / max : 0;
+        }).description("连接池利用率").register(registry);
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, String attribute,
+                       BinaryOperator<Double> merge) {
+        Gauge.builder(name, this, metrics -> metrics.read(attribute, merge))
+                .description(description)
+                .register(registry);
+    }
+
+    // 合并所有连接池的同一个属性，没有连接池时为 0
+    private double read(String attribute, BinaryOperator<Double> merge) {
+        Set<ObjectName> names = mBeanServer.queryNames(POOL_NAMES, null);
+        double value = 0;
+        for (ObjectName name : names) {
+            try {
+                value = merge.apply(value, ((Number) mBeanServer.getAttribute(name, attribute)).doubleValue());
+            } catch (Exception e) {
+                log.debug("读取连接池指标失败，{} {}", name, attribute, e);
+            }
+        }
+        return value;
+    }
+}
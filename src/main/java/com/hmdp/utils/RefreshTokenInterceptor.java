@@ -1,25 +1,23 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_REFRESH_TTL;
 
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private SessionCache sessionCache;
+    private SignedTokenManager signedTokenManager;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(SessionCache sessionCache, SignedTokenManager signedTokenManager) {
+        this.sessionCache = sessionCache;
+        this.signedTokenManager = signedTokenManager;
     }
 
     @Override
@@ -30,29 +28,43 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         if (StrUtil.isBlank(token)) {
             return true;
         }
-        // 2、基于 token 获取 redis 中的用户
-        String key = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        // 2、基于 token 获取用户
+        UserDTO userDto;
+        if (SignedTokenManager.isSigned(token)) {
+            // 2.1、签名 token，本地校验即可，没有开启签名 token 模式时校验不通过；
+            // 剩余有效期不足时通过响应头下发新 token（维持登录状态）
+            SignedTokenManager.SignedToken signedToken = signedTokenManager.parse(token);
+            userDto = signedToken == null ? null : signedToken.getUser();
+            if (signedToken != null && signedToken.getExpireAt() - System.currentTimeMillis()
+                    < TimeUnit.MINUTES.toMillis(LOGIN_USER_REFRESH_TTL)) {
+                response.setHeader("authorization", signedTokenManager.create(userDto));
+            }
+        } else {
+            // 2.2、Redis token，优先走本地缓存，token 剩余有效期不足时才会刷新（维持登录状态）
+            userDto = sessionCache.get(token);
+        }
 
         // 3、判断用户是否存在
-        if (userMap.isEmpty()) {
+        if (userDto == null) {
             return true;
         }
-        // 5、将查询到的 Hash 数据转为 UserDTO 对象
-        UserDTO userDto = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
 
-        // 6、存在，保存用户信息到ThreadLocal
+        // 4、存在，保存用户信息到ThreadLocal
         UserHolder.saveUser(userDto);
 
-        // 7、拦截器一旦被触发（说明用户在操作），刷新token有效期（维持登录状态）
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
-
-        // 8、放行
+        // 5、放行
         return true;
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
-        HandlerInterceptor.super.afterCompletion(request, response, handler, ex);
+        // 移除用户，避免线程复用时串号
+        UserHolder.removeUser();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求不会在当前线程上调用 afterCompletion，这里也要移除用户
+        UserHolder.removeUser();
     }
 }
@@ -0,0 +1,13 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.*;
+
+/**
+ * 方法内的查询走只读副本，由 {@link ReplicaReadAspect} 处理。
+ * 副本延迟过大、或者当前用户刚写过数据时，仍然走主库
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReplicaRead {
+}
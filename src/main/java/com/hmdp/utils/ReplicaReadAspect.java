@@ -0,0 +1,27 @@
+package com.hmdp.utils;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * 处理 {@link ReplicaRead}：方法执行期间标记当前线程的查询可以走只读副本，
+ * 真正走哪个库由 {@link DataSourceRouter} 在取连接时决定。
+ * 嵌套的 @ReplicaRead 方法共用最外层的状态，用户是否刚写过数据只查一次
+ */
+@Aspect
+@Component
+public class ReplicaReadAspect {
+
+    @Around("@annotation(com.hmdp.utils.ReplicaRead) || @within(com.hmdp.utils.ReplicaRead)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        // 嵌套调用时沿用外层的状态，只有最外层离开时清除
+        boolean nested = DataSourceRouter.enterReplicaRead();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouter.exitReplicaRead(nested);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 统计每个请求执行的 Redis 命令数，用来发现一个请求里多次往返、应该合并成 pipeline 的接口；
+ * 被采样的请求交给 {@link RequestTracer} 追踪 Redis 和 SQL 的调用明细。
+ * 只统计请求线程上的调用，异步线程和响应式客户端上的调用不计入
+ */
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final DistributionSummary REDIS_COMMANDS_PER_REQUEST = DistributionSummary
+            .builder("hmdp.redis.commands.per.request")
+            .description("每个请求执行的 Redis 命令数")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+    private RequestTracer requestTracer;
+
+    public RequestMetricsInterceptor(RequestTracer requestTracer) {
+        this.requestTracer = requestTracer;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求的第二次分派在另一个线程上，命令已经在第一次分派结束时记录过了
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            MeteredStringRedisTemplate.resetRequestCommands();
+            requestTracer.start(request);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求的第一次分派到这里结束，记录请求线程上执行的命令
+        REDIS_COMMANDS_PER_REQUEST.record(MeteredStringRedisTemplate.getRequestCommands());
+        requestTracer.finish();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return;
+        }
+        REDIS_COMMANDS_PER_REQUEST.record(MeteredStringRedisTemplate.getRequestCommands());
+        requestTracer.finish();
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次请求的调用追踪：按命令、按 SQL 累计 Redis 和 MySQL 的调用次数与耗时。
+ * 只有被采样的请求才会创建，未采样时 {@link #current()} 返回 null，埋点只多一次 ThreadLocal 读取
+ */
+public class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+    // 明细里 SQL 的最大长度
+    private static final int SQL_MAX_LENGTH = 80;
+
+    private final String name;
+    private final boolean forced;
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, Call> redisCalls = new LinkedHashMap<>();
+    private final Map<String, Call> sqlCalls = new LinkedHashMap<>();
+    private int redisCount;
+    private long redisNanos;
+    private int sqlCount;
+    private long sqlNanos;
+
+    private RequestTrace(String name, boolean forced) {
+        this.name = name;
+        this.forced = forced;
+    }
+
+    /**
+     * 在当前线程上开始追踪
+     */
+    public static void start(String name, boolean forced) {
+        CURRENT.set(new RequestTrace(name, forced));
+    }
+
+    /**
+     * 当前线程正在进行的追踪，没有被采样时返回 null
+     */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 结束当前线程的追踪，返回追踪结果，没有被采样时返回 null
+     */
+    public static RequestTrace finish() {
+        RequestTrace trace = CURRENT.get();
+        CURRENT.remove();
+        return trace;
+    }
+
+    public void recordRedis(String command, long nanos) {
+        redisCount++;
+        redisNanos += nanos;
+        redisCalls.computeIfAbsent(command, k -> new Call()).add(nanos);
+    }
+
+    public void recordSql(String sql, long nanos) {
+        sqlCount++;
+        sqlNanos += nanos;
+        String normalized = sql.replaceAll("\\s+", " ").trim();
+        if (normalized.length() > SQL_MAX_LENGTH) {
+            normalized = normalized.substring(0, SQL_MAX_LENGTH) + "...";
+        }
+        sqlCalls.computeIfAbsent(normalized, k -> new Call()).add(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isForced() {
+        return forced;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public int getRedisCount() {
+        return redisCount;
+    }
+
+    public int getSqlCount() {
+        return sqlCount;
+    }
+
+    /**
+     * 调用明细，例如：GET /blog/hot 230ms, redis 12 次 3ms [get x10 2ms, ...], sql 11 次 150ms [SELECT ... x10 140ms]
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder(name).append(' ').append(getElapsedMillis()).append("ms");
+        append(sb.append(", redis "), redisCount, redisNanos, redisCalls);
+        append(sb.append(", sql "), sqlCount, sqlNanos, sqlCalls);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, int count, long nanos, Map<String, Call> calls) {
+        sb.append(count).append(" 次 ").append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms [");
+        boolean first = true;
+        for (Map.Entry<String, Call> entry : calls.entrySet()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            Call call = entry.getValue();
+            sb.append(entry.getKey()).append(" x").append(call.count)
+                    .append(' ').append(TimeUnit.NANOSECONDS.toMillis(call.nanos)).append("ms");
+        }
+        sb.append(']');
+    }
+
+    private static class Call {
+        private int count;
+        private long nanos;
+
+        void add(long nanos) {
+            count++;
+            this.nanos += nanos;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 请求追踪的采样和上报：
+ * 1、按采样率追踪请求，X-Trace 请求头的值等于配置的追踪口令时总是追踪，
+ *    口令只发给内部调用方，外部客户端不能靠加请求头让每个请求都走追踪的代理和日志
+ * 2、耗时、Redis 命令数或 SQL 条数超过阈值的请求，连同调用明细打印告警日志，并按接口计数
+ */
+@Slf4j
+@Component
+public class RequestTracer {
+
+    private static final String TRACE_HEADER = "X-Trace";
+
+    @Value("${hmdp.trace.token:}")
+    private String token;
+
+    @Value("${hmdp.trace.sample-rate:0}")
+    private double sampleRate;
+
+    @Value("${hmdp.trace.slow-ms:500}")
+    private long slowMillis;
+
+    @Value("${hmdp.trace.max-redis:20}")
+    private int maxRedis;
+
+    @Value("${hmdp.trace.max-sql:10}")
+    private int maxSql;
+
+    /**
+     * 按采样率决定是否追踪这个请求，追踪的在当前线程上开始记录
+     */
+    public void start(HttpServletRequest request) {
+        boolean forced = isForced(request.getHeader(TRACE_HEADER));
+        if (!forced && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        RequestTrace.start(request.getMethod() + " " + pattern(request), forced);
+    }
+
+    /**
+     * 结束当前线程的追踪，超过阈值的上报
+     */
+    public void finish() {
+        RequestTrace trace = RequestTrace.finish();
+        if (trace == null) {
+            return;
+        }
+        boolean slow = trace.getElapsedMillis() >= slowMillis
+                || trace.getRedisCount() > maxRedis
+                || trace.getSqlCount() > maxSql;
+        if (slow) {
+            Metrics.counter("hmdp.trace.slow", "request", trace.getName()).increment();
+            log.warn("慢请求：{}", trace.summary());
+        } else if (trace.isForced()) {
+            log.info("请求追踪：{}", trace.summary());
+        }
+    }
+
+    // 没有配置口令时不允许强制追踪，比较用 MessageDigest.isEqual，耗时和内容无关
+    private boolean isForced(String header) {
+        if (header == null || StrUtil.isEmpty(token)) {
+            return false;
+        }
+        return MessageDigest.isEqual(header.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 用匹配到的路径模板作为接口名，/shop/1 和 /shop/2 算同一个接口
+    private static String pattern(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : request.getRequestURI();
+    }
+}
@@ -0,0 +1,163 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀排队，只对开启了排队的秒杀券生效：
+ * 1、用户先取号，号码按先后顺序递增
+ * 2、定时任务按配置的速率推进“已放行位置”，号码不超过它的用户才能下单
+ * 3、用户的号码和已放行位置都缓存在本地，轮询排队状态基本不访问 Redis
+ */
+@Component
+public class SeckillWaitingRoom {
+
+    private static final DefaultRedisScript<Long> JOIN_SCRIPT;
+    private static final DefaultRedisScript<Long> ADMIT_SCRIPT;
+
+    static {
+        JOIN_SCRIPT = new DefaultRedisScript<>();
+        JOIN_SCRIPT.setLocation(new ClassPathResource("queue_join.lua"));
+        JOIN_SCRIPT.setResultType(Long.class);
+        ADMIT_SCRIPT = new DefaultRedisScript<>();
+        ADMIT_SCRIPT.setLocation(new ClassPathResource("queue_admit.lua"));
+        ADMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 每秒放行的人数
+    @Value("${hmdp.seckill.admit-rate:200}")
+    private int admitRate;
+
+    // voucherId:userId -> 排队号码，号码取到后不会再变
+    private final Cache<String, Long> positions = Caffeine.newBuilder()
+            .maximumSize(1000000)
+            .expireAfterAccess(SECKILL_QUEUE_TTL, TimeUnit.HOURS)
+            .build();
+
+    // voucherId -> 已放行位置，定时从 Redis 刷新
+    private final Map<Long, Long> admitted = new ConcurrentHashMap<>();
+
+    public SeckillWaitingRoom(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 取号，重复取号返回原来的号码
+     */
+    public long join(Long voucherId, Long userId) {
+        Long position = stringRedisTemplate.execute(
+                JOIN_SCRIPT,
+                Arrays.asList(SECKILL_QUEUE_SEQ_KEY + voucherId, SECKILL_QUEUE_POSITION_KEY + voucherId, SECKILL_QUEUE_ACTIVE_KEY),
+                userId.toString(), voucherId.toString(), String.valueOf(TimeUnit.HOURS.toSeconds(SECKILL_QUEUE_TTL))
+        );
+        positions.put(voucherId + ":" + userId, position);
+        return position;
+    }
+
+    /**
+     * 查询用户的号码，没有取号返回 null
+     */
+    public Long position(Long voucherId, Long userId) {
+        String cacheKey = voucherId + ":" + userId;
+        Long position = positions.getIfPresent(cacheKey);
+        if (position != null) {
+            return position;
+        }
+        Object value = stringRedisTemplate.opsForHash().get(SECKILL_QUEUE_POSITION_KEY + voucherId, userId.toString());
+        if (value == null) {
+            return null;
+        }
+        position = Long.valueOf(value.toString());
+        positions.put(cacheKey, position);
+        return position;
+    }
+
+    /**
+     * 查询已放行到的位置
+     */
+    public long admitted(Long voucherId) {
+        return admitted.computeIfAbsent(voucherId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_QUEUE_ADMITTED_KEY + id);
+            return value == null ? 0L : Long.parseLong(value);
+        });
+    }
+
+    /**
+     * 用户是否已经排到，可以下单
+     */
+    public boolean isAdmitted(Long voucherId, Long userId) {
+        Long position = position(voucherId, userId);
+        return position != null && position <= admitted(voucherId);
+    }
+
+    /**
+     * 每秒推进一次所有排队中优惠券的放行位置。
+     * 每个节点每秒都会执行，按 Redis 的时间取当前秒，只有抢到这一秒的 fencing key 的节点推进，
+     * 整个集群每秒只推进一次，放行速率不会随节点数增加
+     */
+    @Scheduled(fixedRate = 1000)
+    public void admit() {
+        Long now = stringRedisTemplate.execute((RedisCallback<Long>) RedisServerCommands::time);
+        if (now == null) {
+            return;
+        }
+        String fencingKey = SECKILL_QUEUE_ADMIT_KEY + TimeUnit.MILLISECONDS.toSeconds(now);
+        if (!BooleanUtil.isTrue(stringRedisTemplate.opsForValue().setIfAbsent(fencingKey, "1", 10, TimeUnit.SECONDS))) {
+            return;
+        }
+        Set<String> voucherIds = stringRedisTemplate.opsForSet().members(SECKILL_QUEUE_ACTIVE_KEY);
+        if (voucherIds == null) {
+            return;
+        }
+        String ttl = String.valueOf(TimeUnit.HOURS.toSeconds(SECKILL_QUEUE_TTL));
+        for (String voucherId : voucherIds) {
+            stringRedisTemplate.execute(
+                    ADMIT_SCRIPT,
+                    Arrays.asList(SECKILL_QUEUE_SEQ_KEY + voucherId, SECKILL_QUEUE_ADMITTED_KEY + voucherId, SECKILL_QUEUE_ACTIVE_KEY),
+                    voucherId, String.valueOf(admitRate), ttl
+            );
+        }
+    }
+
+    /**
+     * 每 500 毫秒用一次 MGET 刷新本地缓存的放行位置
+     */
+    @Scheduled(fixedDelay = 500)
+    public void refreshAdmitted() {
+        if (admitted.isEmpty()) {
+            return;
+        }
+        List<Long> voucherIds = new ArrayList<>(admitted.keySet());
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(
+                voucherIds.stream().map(id -> SECKILL_QUEUE_ADMITTED_KEY + id).collect(Collectors.toList()));
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < voucherIds.size(); i++) {
+            String value = values.get(i);
+            admitted.put(voucherIds.get(i), value == null ? 0L : Long.parseLong(value));
+        }
+    }
+}
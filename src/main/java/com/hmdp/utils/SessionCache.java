@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.CollUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import lombok.AllArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 登录用户的本地缓存：
+ * 1、命中本地缓存时不访问 Redis
+ * 2、只有 Redis 中 token 的剩余有效期低于阈值时才续期，而不是每个请求都 EXPIRE
+ * 3、登出等操作通过 Redis 频道广播，所有节点一起失效本地缓存
+ * 4、未命中本地缓存时，用一个脚本一次往返读出用户和剩余有效期，需要续期时和命中本地缓存一样走 pipeline
+ */
+@Component
+public class SessionCache {
+
+    // 本地缓存的会话数量上限
+    private static final long SESSION_CACHE_MAX_SIZE = 100000;
+
+    private static final DefaultRedisScript<List> LOAD_SCRIPT;
+
+    static {
+        LOAD_SCRIPT = new DefaultRedisScript<>();
+        LOAD_SCRIPT.setLocation(new ClassPathResource("session_load.lua"));
+        LOAD_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisBatch redisBatch;
+
+    private final Cache<String, Session> cache = Caffeine.newBuilder()
+            .maximumSize(SESSION_CACHE_MAX_SIZE)
+            .expireAfterWrite(LOGIN_USER_LOCAL_TTL, TimeUnit.SECONDS)
+            .build();
+
+    public SessionCache(StringRedisTemplate stringRedisTemplate, RedisBatch redisBatch) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisBatch = redisBatch;
+    }
+
+    /**
+     * 根据 token 获取登录用户，不存在返回 null
+     */
+    public UserDTO get(String token) {
+        long now = System.currentTimeMillis();
+        // 1、查询本地缓存
+        Session session = cache.getIfPresent(token);
+        if (session == null) {
+            // 2、未命中，用脚本查询 Redis 中的用户和剩余有效期
+            session = load(token, now);
+            if (session == null) {
+                return null;
+            }
+            cache.put(token, session);
+        }
+        // 3、剩余有效期不足时才续期，用户的 token 集合一起续期
+        if (session.expireAt - now < TimeUnit.MINUTES.toMillis(LOGIN_USER_REFRESH_TTL)) {
+            String tokensKey = LOGIN_USER_TOKENS_KEY + session.user.getId();
+            redisBatch.pipeline(conn -> {
+                conn.expire(LOGIN_USER_KEY + token, TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL));
+                conn.expire(tokensKey, TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL));
+            });
+            session.expireAt = now + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        }
+        return session.user;
+    }
+
+    /**
+     * 在调用方的 pipeline 里广播失效这些 token，本节点的本地缓存立即失效，
+     * 和删除 token 的命令一起发出，不单独占一次往返
+     */
+    public void invalidate(StringRedisConnection conn, Collection<String> tokens) {
+        cache.invalidateAll(tokens);
+        tokens.forEach(token -> conn.publish(LOGIN_INVALIDATE_CHANNEL, token));
+    }
+
+    /**
+     * 收到失效广播时调用，只失效本节点
+     */
+    public void evictLocal(String token) {
+        cache.invalidate(token);
+    }
+
+    private Session load(String token, long now) {
+        // 1、执行脚本，返回 hash 的字段、值交替排列，最后一项是剩余有效期
+        @SuppressWarnings("unchecked")
+        List<String> result = stringRedisTemplate.execute(
+                LOAD_SCRIPT,
+                Collections.singletonList(LOGIN_USER_KEY + token)
+        );
+        if (CollUtil.isEmpty(result)) {
+            return null;
+        }
+        // 2、还原用户信息
+        Map<String, String> userMap = new HashMap<>(result.size());
+        for (int i = 0; i + 1 < result.size(); i += 2) {
+            userMap.put(result.get(i), result.get(i + 1));
+        }
+        UserDTO user = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        // 3、没有过期时间的，按立即需要续期处理
+        long pttl = Long.parseLong(result.get(result.size() - 1));
+        long expireAt = pttl < 0 ? now : now + pttl;
+        return new Session(user, expireAt);
+    }
+
+    @AllArgsConstructor
+    private static class Session {
+        private final UserDTO user;
+        // Redis 中 token 的过期时间，毫秒时间戳
+        private volatile long expireAt;
+    }
+}
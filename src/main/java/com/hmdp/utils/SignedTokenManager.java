@@ -0,0 +1,262 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 无状态的签名 token：
+ * token = v1.{base64(用户信息、过期时间、版本号)}.{base64(HMAC-SHA256 签名)}
+ * 校验只需要本地算一次签名，不访问 Redis。
+ * Redis 里只保存被吊销过会话的用户的 token 版本号，本地用布隆过滤器判断是否需要去查版本号。
+ * 只有 hmdp.login.token-mode=signed 时才签发和接受签名 token，其他模式下不需要配置密钥，收到的签名 token 一律无效
+ */
+@Component
+public class SignedTokenManager {
+
+    private static final String TOKEN_PREFIX = "v1.";
+    private static final String TOKEN_MODE_SIGNED = "signed";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    // 签名只保留前 16 字节，足够防伪造，token 也更短
+    private static final int SIGNATURE_LENGTH = 16;
+    // 密钥的最小长度，太短的密钥可以被暴力破解
+    private static final int SECRET_MIN_LENGTH = 32;
+    // 布隆过滤器的位数和哈希函数个数，100 万个用户误判率约 1%
+    private static final int BLOOM_BITS = 1 << 23;
+    private static final int BLOOM_HASHES = 7;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisBatch redisBatch;
+
+    @Value("${hmdp.login.token-mode:redis}")
+    private String tokenMode;
+
+    @Value("${hmdp.login.token-secret:}")
+    private String secret;
+
+    private ThreadLocal<Mac> macHolder;
+
+    // 吊销过会话的用户，不在里面的用户一定没有被吊销过
+    private final BloomFilter revokedUsers = new BloomFilter();
+
+    // 用户当前 token 版本号的本地缓存，收到吊销广播时失效
+    private final Cache<Long, Long> versionCache = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
+    public SignedTokenManager(StringRedisTemplate stringRedisTemplate, RedisBatch redisBatch) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisBatch = redisBatch;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 1、不是签名 token 模式，不需要密钥
+        if (!isEnabled()) {
+            return;
+        }
+        // 2、密钥不能写在代码仓库里，没有配置或者太短时直接启动失败
+        if (secret == null || secret.length() < SECRET_MIN_LENGTH) {
+            throw new IllegalStateException(
+                    "hmdp.login.token-secret 未配置或少于 " + SECRET_MIN_LENGTH + " 个字符，请通过环境变量 HMDP_TOKEN_SECRET 设置");
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        macHolder = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 是否使用签名 token 登录
+     */
+    public boolean isEnabled() {
+        return TOKEN_MODE_SIGNED.equals(tokenMode);
+    }
+
+    public static boolean isSigned(String token) {
+        return token.startsWith(TOKEN_PREFIX);
+    }
+
+    /**
+     * 为用户签发 token
+     */
+    public String create(UserDTO user) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("没有开启签名 token 模式");
+        }
+        JSONObject payload = new JSONObject();
+        payload.set("i", user.getId());
+        payload.set("n", user.getNickName());
+        payload.set("c", user.getIcon());
+        payload.set("e", System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL));
+        payload.set("v", currentVersion(user.getId()));
+        String body = ENCODER.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return TOKEN_PREFIX + body + "." + ENCODER.encodeToString(sign(body));
+    }
+
+    /**
+     * 校验 token，没有开启签名 token 模式、签名错误、已过期或已被吊销的返回 null
+     */
+    public SignedToken parse(String token) {
+        if (!isEnabled()) {
+            return null;
+        }
+        // 1、拆分并校验签名
+        int dot = token.lastIndexOf('.');
+        if (dot <= TOKEN_PREFIX.length()) {
+            return null;
+        }
+        String body = token.substring(TOKEN_PREFIX.length(), dot);
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(body), signature)) {
+            return null;
+        }
+        // 2、校验过期时间
+        JSONObject payload = JSONUtil.parseObj(new String(DECODER.decode(body), StandardCharsets.UTF_8));
+        long expireAt = payload.getLong("e");
+        if (expireAt < System.currentTimeMillis()) {
+            return null;
+        }
+        // 3、只有布隆过滤器认为被吊销过的用户，才需要比对版本号
+        Long userId = payload.getLong("i");
+        long version = payload.getLong("v");
+        if (revokedUsers.mightContain(userId) && version < currentVersion(userId)) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        user.setNickName(payload.getStr("n"));
+        user.setIcon(payload.getStr("c"));
+        return new SignedToken(user, expireAt);
+    }
+
+    /**
+     * 吊销用户已签发的所有 token，并广播给所有节点
+     */
+    public void revokeAll(Long userId) {
+        onRevoked(userId);
+        redisBatch.pipeline(conn -> {
+            conn.hIncrBy(LOGIN_VERSION_KEY, userId.toString(), 1);
+            conn.publish(LOGIN_REVOKE_CHANNEL, userId.toString());
+        });
+    }
+
+    /**
+     * 收到吊销广播时调用
+     */
+    public void onRevoked(Long userId) {
+        revokedUsers.put(userId);
+        versionCache.invalidate(userId);
+    }
+
+    /**
+     * 定时把 Redis 里的吊销记录合并进布隆过滤器，兜底丢失的广播消息。
+     * 只合并不替换，重新加载期间收到的广播不会被覆盖掉
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 5 * 60 * 1000)
+    public void reloadRevokedUsers() {
+        Set<Object> userIds = stringRedisTemplate.opsForHash().keys(LOGIN_VERSION_KEY);
+        userIds.forEach(userId -> revokedUsers.put(Long.valueOf(userId.toString())));
+    }
+
+    private long currentVersion(Long userId) {
+        return versionCache.get(userId, id -> {
+            Object version = stringRedisTemplate.opsForHash().get(LOGIN_VERSION_KEY, id.toString());
+            return version == null ? 0L : Long.parseLong(version.toString());
+        });
+    }
+
+    private byte[] sign(String body) {
+        byte[] hmac = macHolder.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(hmac, SIGNATURE_LENGTH);
+    }
+
+    @Data
+    public static class SignedToken {
+        private final UserDTO user;
+        // token 过期时间，毫秒时间戳
+        private final long expireAt;
+    }
+
+    /**
+     * 只增不减的布隆过滤器，位数组用 AtomicLongArray，可以无锁并发写入
+     */
+    private static class BloomFilter {
+        private final AtomicLongArray bits = new AtomicLongArray(BLOOM_BITS / 64);
+
+        void put(long value) {
+            long hash = mix(value);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = index(hash, i);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long old;
+                do {
+                    old = bits.get(word);
+                } while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(long value) {
+            long hash = mix(value);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = index(hash, i);
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 双重哈希：h1 + i * h2
+        private static int index(long hash, int i) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            return ((h1 + i * h2) & Integer.MAX_VALUE) % BLOOM_BITS;
+        }
+
+        private static long mix(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 29);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.lang.UUID;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -12,6 +14,8 @@ public class SimpleRedisLock implements ILock {
 
     private String name;
     private StringRedisTemplate stringRedisTemplate;
+    // 获取到锁的时间，用于统计持有时长
+    private long lockedAt;
 
     public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
         this.name = name;
@@ -28,14 +32,36 @@ public class SimpleRedisLock implements ILock {
         UNLOCK_SCRIPT.setResultType(Long.class);
     }
 
+    private static final Timer ACQUIRED_TIMER = acquireTimer("acquired");
+    private static final Timer FAILED_TIMER = acquireTimer("failed");
+    private static final Timer HELD_TIMER = Timer.builder("hmdp.lock.held")
+            .description("锁的持有时长")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+    private static Timer acquireTimer(String result) {
+        return Timer.builder("hmdp.lock.acquire")
+                .description("获取锁的耗时")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
     @Override
     public boolean tryLock(long timeoutSec) {
         // 获取线程标识
         String threadId = ID_PREFIX + Thread.currentThread().getId();
         // 获取锁
+        long start = System.nanoTime();
         Boolean success = stringRedisTemplate.opsForValue()
                 .setIfAbsent(KEY_PREFIX + name, threadId, timeoutSec, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(success);
+        long end = System.nanoTime();
+        boolean locked = Boolean.TRUE.equals(success);
+        (locked ? ACQUIRED_TIMER : FAILED_TIMER).record(end - start, TimeUnit.NANOSECONDS);
+        if (locked) {
+            lockedAt = end;
+        }
+        return locked;
     }
 
     @Override
@@ -46,6 +72,10 @@ public class SimpleRedisLock implements ILock {
                 Collections.singletonList(KEY_PREFIX + name),
                 ID_PREFIX + Thread.currentThread().getId()
         );
+        if (lockedAt != 0) {
+            HELD_TIMER.record(System.nanoTime() - lockedAt, TimeUnit.NANOSECONDS);
+            lockedAt = 0;
+        }
     }
 
 //    @Override
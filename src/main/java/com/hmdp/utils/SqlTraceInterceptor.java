@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.sql.Statement;
+
+/**
+ * 把 SQL 的执行次数和耗时记到当前请求的 {@link RequestTrace} 上。
+ * 拦截 StatementHandler，只统计真正发到数据库的语句，命中 MyBatis 一级缓存的查询不计入
+ */
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})
+})
+public class SqlTraceInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            StatementHandler handler = (StatementHandler) invocation.getTarget();
+            trace.recordSql(handler.getBoundSql().getSql(), System.nanoTime() - start);
+        }
+    }
+}
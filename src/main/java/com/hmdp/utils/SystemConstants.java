@@ -5,4 +5,17 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "用户_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int FEED_INBOX_MAX_SIZE = 1000;
+    public static final int FEED_INACTIVE_DAYS = 30;
+    public static final int SECKILL_INITIAL_CONCURRENCY = 20;
+    public static final int SECKILL_MIN_CONCURRENCY = 5;
+    public static final int SECKILL_MAX_CONCURRENCY = 200;
+    public static final int ASYNC_DB_POOL_SIZE = 20;
+    public static final int ASYNC_DB_QUEUE_CAPACITY = 2000;
+    public static final long ASYNC_REQUEST_TIMEOUT = 10000L;
+    public static final int REDIS_REQUEST_QUEUE_SIZE = 10000;
+    // 用户没有写过数据的结果在本地缓存多久（毫秒），其他节点上的写最多晚这么久才让本节点的读回到主库
+    public static final long DB_STICKY_NEGATIVE_CACHE_MILLIS = 1000L;
+    // 订单分表数量，不能超过 RedisIdWorker 里分片号位数能表示的范围
+    public static final int VOUCHER_ORDER_SHARDS = 4;
 }
@@ -0,0 +1,165 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.hmdp.utils.RedisConstants.UV_MERGED_TTL;
+import static com.hmdp.utils.RedisConstants.UV_TTL;
+
+/**
+ * 基于 HyperLogLog 的 UV 统计：
+ * 访问记录先写入本地缓冲，每秒用一次 pipeline 批量 PFADD 到 Redis，读接口不额外增加网络往返
+ */
+@Slf4j
+@Component
+public class UvCounter {
+
+    private static final DateTimeFormatter UV_DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    // 本地缓冲的访问记录数量达到这个值就提前刷到 Redis
+    private static final int UV_BUFFER_MAX = 100000;
+
+    private static final ExecutorService UV_FLUSH_EXECUTOR =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("uv-flush-", true));
+
+    private static final DefaultRedisScript<Long> MERGE_SCRIPT;
+
+    static {
+        MERGE_SCRIPT = new DefaultRedisScript<>();
+        MERGE_SCRIPT.setLocation(new ClassPathResource("uv_merge.lua"));
+        MERGE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisBatch redisBatch;
+
+    // key -> 访客集合，同一个访客在一个刷新周期内只会被 PFADD 一次
+    private final AtomicReference<Map<String, Set<String>>> buffer = new AtomicReference<>(new ConcurrentHashMap<>());
+    private final AtomicInteger bufferSize = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    // 写入缓冲时持有读锁，换缓冲区时持有写锁，换完之后旧缓冲区上不会再有写入
+    private final ReadWriteLock bufferLock = new ReentrantReadWriteLock();
+
+    public UvCounter(StringRedisTemplate stringRedisTemplate, RedisBatch redisBatch) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisBatch = redisBatch;
+    }
+
+    /**
+     * 记录一次访问，登录用户按用户id去重，未登录的按IP去重
+     */
+    public void record(String keyPrefix, Long id, HttpServletRequest request) {
+        UserDTO user = UserHolder.getUser();
+        String visitor = user != null ? user.getId().toString() : "ip:" + request.getRemoteAddr();
+        String key = keyPrefix + id + ":" + LocalDate.now().format(UV_DAY_FORMATTER);
+        boolean added;
+        bufferLock.readLock().lock();
+        try {
+            added = buffer.get().computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(visitor);
+        } finally {
+            bufferLock.readLock().unlock();
+        }
+        if (added && bufferSize.incrementAndGet() >= UV_BUFFER_MAX && flushing.compareAndSet(false, true)) {
+            UV_FLUSH_EXECUTOR.execute(this::flush);
+        }
+    }
+
+    /**
+     * 查询当天、近 7 天、近 30 天的 UV，一次 pipeline 查询完
+     */
+    public Map<String, Long> count(String keyPrefix, Long id) {
+        LocalDate today = LocalDate.now();
+        String todayKey = keyPrefix + id + ":" + today.format(UV_DAY_FORMATTER);
+        String mergedTtl = String.valueOf(TimeUnit.MINUTES.toSeconds(UV_MERGED_TTL));
+        List<Object> results = redisBatch.pipeline(conn -> {
+            conn.pfCount(todayKey);
+            redisBatch.evalSha(conn, MERGE_SCRIPT, mergeKeys(keyPrefix, id, today, 7), mergedTtl);
+            redisBatch.evalSha(conn, MERGE_SCRIPT, mergeKeys(keyPrefix, id, today, 30), mergedTtl);
+        });
+        Map<String, Long> uv = new LinkedHashMap<>(4);
+        uv.put("day", (Long) results.get(0));
+        uv.put("week", (Long) results.get(1));
+        uv.put("month", (Long) results.get(2));
+        return uv;
+    }
+
+    // 合并结果的 key 和最近 days 天的 key，合并结果缓存一段时间，重复查询不用再合并
+    private static List<String> mergeKeys(String keyPrefix, Long id, LocalDate today, int days) {
+        List<String> keys = new ArrayList<>(days + 1);
+        keys.add(keyPrefix + id + ":" + days + "d:" + today.format(UV_DAY_FORMATTER));
+        for (int i = 0; i < days; i++) {
+            keys.add(keyPrefix + id + ":" + today.minusDays(i).format(UV_DAY_FORMATTER));
+        }
+        return keys;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void scheduledFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    private void flush() {
+        try {
+            // 1、换一个新的缓冲区，旧的缓冲区交给当前线程刷到 Redis；
+            // 拿到写锁说明正在写旧缓冲区的线程都已经写完
+            Map<String, Set<String>> snapshot;
+            bufferLock.writeLock().lock();
+            try {
+                snapshot = buffer.getAndSet(new ConcurrentHashMap<>());
+                bufferSize.set(0);
+            } finally {
+                bufferLock.writeLock().unlock();
+            }
+            if (snapshot.isEmpty()) {
+                return;
+            }
+            // 2、一次 pipeline 写入所有 key，并设置过期时间，保证月度统计可用
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                snapshot.forEach((key, visitors) -> {
+                    conn.pfAdd(key, visitors.toArray(new String[0]));
+                    conn.expire(key, TimeUnit.DAYS.toSeconds(UV_TTL));
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("UV 记录刷新到 Redis 失败", e);
+        } finally {
+            flushing.set(false);
+        }
+    }
+}
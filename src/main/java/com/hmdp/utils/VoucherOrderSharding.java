@@ -0,0 +1,62 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.extension.plugins.handler.TableNameHandler;
+
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.SystemConstants.VOUCHER_ORDER_SHARDS;
+
+/**
+ * 订单表按用户id分成 {@link SystemConstants#VOUCHER_ORDER_SHARDS} 张物理表 tb_voucher_order_{分片号}：
+ * 1、同一个用户的订单都在同一张表里，一人一单的唯一索引在分表后仍然有效
+ * 2、新订单id的最低几位就是分片号（见 {@link RedisIdWorker#nextId(String, int)}），按订单id查询不用查所有分表；
+ *    分表前的旧订单id里没有分片号，旧订单按 user_id 迁移到分表，只能按用户找分片
+ * 3、访问订单表前必须用 {@link #withShard} 指定分片，没有指定时直接报错，避免 SQL 落到不存在的逻辑表上
+ */
+public class VoucherOrderSharding implements TableNameHandler {
+
+    public static final String TABLE_NAME = "tb_voucher_order";
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    /**
+     * 用户的订单所在的分片，就是 user_id % 分片数，和旧订单迁移时的分片规则一致
+     */
+    public static int shardOfUser(Long userId) {
+        return (int) Math.floorMod(userId, (long) VOUCHER_ORDER_SHARDS);
+    }
+
+    /**
+     * 订单所在的分片，只对分表后生成的订单id有效；旧订单id里没有分片号，取出的值可能超出分片数，
+     * 也可能指向别的分片，要再用 {@link #shardOfUser} 查
+     */
+    public static int shardOfOrder(Long orderId) {
+        return RedisIdWorker.shardOf(orderId);
+    }
+
+    /**
+     * 在指定的分片上执行订单表的读写
+     */
+    public static <T> T withShard(int shard, Supplier<T> action) {
+        Integer previous = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                SHARD.remove();
+            } else {
+                SHARD.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public String dynamicTableName(String sql, String tableName) {
+        Integer shard = SHARD.get();
+        if (shard == null) {
+            throw new IllegalStateException("访问 " + tableName + " 前没有指定分片");
+        }
+        return tableName + "_" + shard;
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+/**
+ * 登录用户执行了写操作后，让这个用户接下来一段时间的查询都走主库，能读到自己刚写的数据
+ */
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class WriteTrackingInterceptor implements Interceptor {
+
+    private final DataSourceRouter router;
+
+    public WriteTrackingInterceptor(DataSourceRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        UserDTO user = UserHolder.getUser();
+        if (user != null) {
+            router.markWrite(user.getId());
+        }
+        return result;
+    }
+}
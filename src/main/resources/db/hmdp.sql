@@ -65,6 +65,23 @@ CREATE TABLE `tb_blog_comments`  (
 -- Records of tb_blog_comments
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_feed_archive
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_feed_archive`;
+CREATE TABLE `tb_feed_archive`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '收件箱所属的用户id',
+  `blog_id` bigint(20) UNSIGNED NOT NULL COMMENT '博文id',
+  `push_time` bigint(20) NOT NULL COMMENT '推送时间，毫秒时间戳',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_time_blog`(`user_id`, `push_time`, `blog_id`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Records of tb_feed_archive
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for tb_follow
 -- ----------------------------
@@ -74,7 +91,8 @@ CREATE TABLE `tb_follow`  (
   `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '用户id',
   `follow_user_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的用户id',
   `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_follow`(`user_id`, `follow_user_id`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
 
 -- ----------------------------
@@ -88,6 +106,7 @@ DROP TABLE IF EXISTS `tb_seckill_voucher`;
 CREATE TABLE `tb_seckill_voucher`  (
   `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的优惠券的id',
   `stock` int(8) NOT NULL COMMENT '库存',
+  `waiting_room` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否需要先排队再下单',
   `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `begin_time` timestamp NOT NULL DEFAULT '0000-00-00 00:00:00' COMMENT '生效时间',
   `end_time` timestamp NOT NULL DEFAULT '0000-00-00 00:00:00' COMMENT '失效时间',
@@ -171,6 +190,7 @@ INSERT INTO `tb_shop_type` VALUES (10, '美睫·美甲', '/types/mjmj.png', 4, '
 
 -- ----------------------------
 -- Table structure for tb_sign
+-- 已有数据的库不要执行这里的 DROP，用 db/migration/003_sign_bitmap.sql 把旧的签到记录合并成位图
 -- ----------------------------
 DROP TABLE IF EXISTS `tb_sign`;
 CREATE TABLE `tb_sign`  (
@@ -178,9 +198,9 @@ CREATE TABLE `tb_sign`  (
   `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '用户id',
   `year` year NOT NULL COMMENT '签到的年',
   `month` tinyint(2) NOT NULL COMMENT '签到的月',
-  `date` date NOT NULL COMMENT '签到的日期',
-  `is_backup` tinyint(1) UNSIGNED NULL DEFAULT NULL COMMENT '是否补签',
-  PRIMARY KEY (`id`) USING BTREE
+  `bits` int(10) UNSIGNED NOT NULL DEFAULT 0 COMMENT '当月签到位图，最高位（第31位）是1号，依次往后',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_month`(`user_id`, `year`, `month`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
 
 -- ----------------------------
@@ -1260,10 +1280,15 @@ CREATE TABLE `tb_voucher`  (
 INSERT INTO `tb_voucher` VALUES (1, 1, '50元代金券', '周一至周日均可使用', '全场通用\\n无需预约\\n可无限叠加\\不兑现、不找零\\n仅限堂食', 4750, 5000, 0, 1, '2022-01-04 09:42:39', '2022-01-04 09:43:31');
 
 -- ----------------------------
--- Table structure for tb_voucher_order
+-- tb_voucher_order 按 user_id 分成 4 张表，分表数量见 SystemConstants.VOUCHER_ORDER_SHARDS
+-- 已有数据的库不要执行这里的 DROP，用 db/migration/002_voucher_order_sharding.sql 迁移旧订单
 -- ----------------------------
 DROP TABLE IF EXISTS `tb_voucher_order`;
-CREATE TABLE `tb_voucher_order`  (
+-- ----------------------------
+-- Table structure for tb_voucher_order_0
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_voucher_order_0`;
+CREATE TABLE `tb_voucher_order_0`  (
   `id` bigint(20) NOT NULL COMMENT '主键',
   `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '下单的用户id',
   `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '购买的代金券id',
@@ -1274,11 +1299,69 @@ CREATE TABLE `tb_voucher_order`  (
   `use_time` timestamp NULL DEFAULT NULL COMMENT '核销时间',
   `refund_time` timestamp NULL DEFAULT NULL COMMENT '退款时间',
   `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Table structure for tb_voucher_order_1
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_voucher_order_1`;
+CREATE TABLE `tb_voucher_order_1`  (
+  `id` bigint(20) NOT NULL COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '下单的用户id',
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '购买的代金券id',
+  `pay_type` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '支付方式 1：余额支付；2：支付宝；3：微信',
+  `status` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '订单状态，1：未支付；2：已支付；3：已核销；4：已取消；5：退款中；6：已退款',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下单时间',
+  `pay_time` timestamp NULL DEFAULT NULL COMMENT '支付时间',
+  `use_time` timestamp NULL DEFAULT NULL COMMENT '核销时间',
+  `refund_time` timestamp NULL DEFAULT NULL COMMENT '退款时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Table structure for tb_voucher_order_2
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_voucher_order_2`;
+CREATE TABLE `tb_voucher_order_2`  (
+  `id` bigint(20) NOT NULL COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '下单的用户id',
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '购买的代金券id',
+  `pay_type` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '支付方式 1：余额支付；2：支付宝；3：微信',
+  `status` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '订单状态，1：未支付；2：已支付；3：已核销；4：已取消；5：退款中；6：已退款',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下单时间',
+  `pay_time` timestamp NULL DEFAULT NULL COMMENT '支付时间',
+  `use_time` timestamp NULL DEFAULT NULL COMMENT '核销时间',
+  `refund_time` timestamp NULL DEFAULT NULL COMMENT '退款时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Table structure for tb_voucher_order_3
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_voucher_order_3`;
+CREATE TABLE `tb_voucher_order_3`  (
+  `id` bigint(20) NOT NULL COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '下单的用户id',
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '购买的代金券id',
+  `pay_type` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '支付方式 1：余额支付；2：支付宝；3：微信',
+  `status` tinyint(1) UNSIGNED NOT NULL DEFAULT 1 COMMENT '订单状态，1：未支付；2：已支付；3：已核销；4：已取消；5：退款中；6：已退款',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下单时间',
+  `pay_time` timestamp NULL DEFAULT NULL COMMENT '支付时间',
+  `use_time` timestamp NULL DEFAULT NULL COMMENT '核销时间',
+  `refund_time` timestamp NULL DEFAULT NULL COMMENT '退款时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
 
 -- ----------------------------
--- Records of tb_voucher_order
+-- Records of tb_voucher_order_0 ~ 3
 -- ----------------------------
 
 SET FOREIGN_KEY_CHECKS = 1;
@@ -0,0 +1,3 @@
+-- 秒杀排队改为按优惠券开启，已有的秒杀券默认不排队，直接下单
+ALTER TABLE `tb_seckill_voucher`
+  ADD COLUMN `waiting_room` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否需要先排队再下单' AFTER `stock`;
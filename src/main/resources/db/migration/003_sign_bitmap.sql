@@ -0,0 +1,24 @@
+-- 签到改为每个用户每月一行的位图（bits 和 Redis 里 BITFIELD GET u31 0 的值一致，1 号在最高位），
+-- 旧表每次签到一行，按月合并成位图，补签的日期也算签到
+-- 执行前先停掉签到归档任务，合并完后旧表改名为 tb_sign_legacy 保留，确认无误后再手动删除
+
+-- 1、按新结构建表
+CREATE TABLE IF NOT EXISTS `tb_sign_bitmap`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '用户id',
+  `year` year NOT NULL COMMENT '签到的年',
+  `month` tinyint(2) NOT NULL COMMENT '签到的月',
+  `bits` int(10) UNSIGNED NOT NULL DEFAULT 0 COMMENT '当月签到位图，最高位（第31位）是1号，依次往后',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_month`(`user_id`, `year`, `month`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- 2、d 号签到对应第 31 - d 位，同一天的重复记录按位或合并
+INSERT INTO `tb_sign_bitmap` (`user_id`, `year`, `month`, `bits`)
+SELECT `user_id`, YEAR(`date`), MONTH(`date`), BIT_OR(1 << (31 - DAYOFMONTH(`date`)))
+  FROM `tb_sign`
+ GROUP BY `user_id`, YEAR(`date`), MONTH(`date`)
+    ON DUPLICATE KEY UPDATE `bits` = `bits` | VALUES(`bits`);
+
+-- 3、替换旧表
+RENAME TABLE `tb_sign` TO `tb_sign_legacy`, `tb_sign_bitmap` TO `tb_sign`;
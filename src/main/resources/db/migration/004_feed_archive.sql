@@ -0,0 +1,9 @@
+-- 收件箱超出长度的旧消息归档到数据库，翻到被裁剪的部分时才查询
+CREATE TABLE IF NOT EXISTS `tb_feed_archive`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `user_id` bigint(20) UNSIGNED NOT NULL COMMENT '收件箱所属的用户id',
+  `blog_id` bigint(20) UNSIGNED NOT NULL COMMENT '博文id',
+  `push_time` bigint(20) NOT NULL COMMENT '推送时间，毫秒时间戳',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_time_blog`(`user_id`, `push_time`, `blog_id`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
@@ -0,0 +1,9 @@
+-- 关注关系按 (user_id, follow_user_id) 唯一，关注变更批量持久化时先删后插，依赖这个唯一索引
+-- 1、同一对关注关系只保留最早的一条
+DELETE f1 FROM `tb_follow` f1
+  JOIN `tb_follow` f2
+    ON f1.`user_id` = f2.`user_id` AND f1.`follow_user_id` = f2.`follow_user_id` AND f1.`id` > f2.`id`;
+
+-- 2、加唯一索引
+ALTER TABLE `tb_follow`
+  ADD UNIQUE INDEX `uk_user_follow`(`user_id`, `follow_user_id`) USING BTREE;
@@ -0,0 +1,18 @@
+-- 读取收件箱时记录用户的活跃时间，并返回上一次的活跃时间，一次往返完成检查和标记
+-- 1、参数列表
+-- 1.1、活跃用户 zset key
+local activeKey = KEYS[1]
+-- 1.2、用户id、当前毫秒时间戳
+local userId = ARGV[1]
+local now = ARGV[2]
+
+-- 2、查询上一次的活跃时间，从来没有访问过的返回 -1
+local lastActive = redis.call('zscore', activeKey, userId)
+
+-- 3、记录本次的活跃时间
+redis.call('zadd', activeKey, now, userId)
+
+if (lastActive) then
+    return tonumber(lastActive)
+end
+return -1
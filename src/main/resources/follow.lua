@@ -0,0 +1,22 @@
+-- 1、参数列表
+-- 1.1、当前用户的关注集合、被关注用户的粉丝集合、待持久化的关注变更 hash
+local followsKey = KEYS[1]
+local fansKey = KEYS[2]
+local pendingKey = KEYS[3]
+-- 1.2、当前用户id、被关注用户id、1 关注 / 0 取关
+local userId = ARGV[1]
+local followUserId = ARGV[2]
+local isFollow = ARGV[3]
+
+-- 2、修改关注关系
+if (isFollow == '1') then
+    redis.call('sadd', followsKey, followUserId)
+    redis.call('sadd', fansKey, userId)
+else
+    redis.call('srem', followsKey, followUserId)
+    redis.call('srem', fansKey, userId)
+end
+
+-- 3、记录变更，同一对用户多次变更只保留最后一次
+redis.call('hset', pendingKey, userId .. ':' .. followUserId, isFollow)
+return 0
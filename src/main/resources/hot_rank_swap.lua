@@ -0,0 +1,48 @@
+-- 用重算好的临时排行榜替换热门排行榜，两个 key 在一个脚本里替换，查询方不会看到不一致的排行榜和发布时间
+-- 1、参数列表
+-- 1.1、临时排行榜 key 及博文发布时间 hash key
+local tmpKey = KEYS[1]
+local tmpTimeKey = KEYS[2]
+-- 1.2、热门排行榜 key 及博文发布时间 hash key
+local hotKey = KEYS[3]
+local hotTimeKey = KEYS[4]
+-- 1.3、待刷库的点赞增量 hash key、正在刷库的点赞增量 hash key
+local deltaKey = KEYS[5]
+local flushingKey = KEYS[6]
+-- 1.4、开始重算的秒级时间戳、热度衰减系数
+local startSecond = tonumber(ARGV[1])
+local gravity = tonumber(ARGV[2])
+
+-- 2、重算用的是数据库里的点赞数，叠加还没刷库的点赞增量
+local times = redis.call('hgetall', tmpTimeKey)
+for i = 1, #times, 2 do
+    local blogId = times[i]
+    local delta = (tonumber(redis.call('hget', deltaKey, blogId)) or 0)
+            + (tonumber(redis.call('hget', flushingKey, blogId)) or 0)
+    if (delta ~= 0) then
+        local ageHours = (startSecond - tonumber(times[i + 1])) / 3600
+        redis.call('zincrby', tmpKey, delta / math.pow(ageHours + 2, gravity), blogId)
+    end
+end
+
+-- 3、重算期间发布的博文不在临时排行榜里，保留它们在排行榜上的热度
+local hotTimes = redis.call('hgetall', hotTimeKey)
+for i = 1, #hotTimes, 2 do
+    local blogId = hotTimes[i]
+    if (tonumber(hotTimes[i + 1]) >= startSecond and not redis.call('zscore', tmpKey, blogId)) then
+        local score = redis.call('zscore', hotKey, blogId)
+        if (score) then
+            redis.call('zadd', tmpKey, score, blogId)
+            redis.call('hset', tmpTimeKey, blogId, hotTimes[i + 1])
+        end
+    end
+end
+
+-- 4、替换排行榜，没有博文时清空
+if (redis.call('exists', tmpKey) == 1) then
+    redis.call('rename', tmpKey, hotKey)
+    redis.call('rename', tmpTimeKey, hotTimeKey)
+else
+    redis.call('del', hotKey, hotTimeKey, tmpTimeKey)
+end
+return redis.call('zcard', hotKey)
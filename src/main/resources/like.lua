@@ -0,0 +1,33 @@
+-- 1、参数列表
+-- 1.1、点赞用户 zset key
+local likedKey = KEYS[1]
+-- 1.2、待刷库的点赞增量 hash key
+local deltaKey = KEYS[2]
+-- 1.3、热门排行榜 key 及博文发布时间 hash key
+local hotKey = KEYS[3]
+local hotTimeKey = KEYS[4]
+-- 1.4、用户id、当前毫秒时间戳、博文id、热度衰减系数
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+local blogId = ARGV[3]
+local gravity = tonumber(ARGV[4])
+
+-- 2、判断用户是否已经点赞，已点赞则取消，未点赞则点赞
+local delta = 1
+if (redis.call('zscore', likedKey, userId)) then
+    redis.call('zrem', likedKey, userId)
+    delta = -1
+else
+    redis.call('zadd', likedKey, now, userId)
+end
+
+-- 3、累计待刷库的点赞增量
+redis.call('hincrby', deltaKey, blogId, delta)
+
+-- 4、在榜的博文同步更新热度
+local createSecond = redis.call('hget', hotTimeKey, blogId)
+if (createSecond) then
+    local ageHours = (now / 1000 - tonumber(createSecond)) / 3600
+    redis.call('zincrby', hotKey, delta / math.pow(ageHours + 2, gravity), blogId)
+end
+return delta
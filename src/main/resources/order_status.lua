@@ -0,0 +1,36 @@
+-- 写入订单状态，状态只往前走：订单创建成功后不会再被失败、没有订单等旧的结果覆盖
+-- 1、参数列表
+-- 1.1、用户的订单状态 hash
+local key = KEYS[1]
+-- 1.2、优惠券id
+local field = ARGV[1]
+-- 1.3、新的状态，格式是 状态:内容
+local value = ARGV[2]
+-- 1.4、hash 的保留时间（秒）
+local ttl = tonumber(ARGV[3])
+-- 1.5、期望的当前状态，为空时不检查
+local expected = ARGV[4]
+
+local state = string.match(value, '^%u+')
+local current = redis.call('hget', key, field)
+
+-- 2、当前状态不是调用方看到的那个，说明已经有新的结果，不覆盖
+if (expected ~= '' and current ~= expected) then
+    return current
+end
+
+if (current) then
+    -- 3、订单已经创建，只有 CREATED 可以再写入
+    if (string.match(current, '^%u+') == 'CREATED' and state ~= 'CREATED') then
+        return current
+    end
+    -- 4、NONE 是查库没有订单时的回写，已经有任何状态都不覆盖
+    if (state == 'NONE') then
+        return current
+    end
+end
+
+-- 5、写入并续期，返回写入后的状态
+redis.call('hset', key, field, value)
+redis.call('expire', key, ttl)
+return value
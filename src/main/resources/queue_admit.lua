@@ -0,0 +1,24 @@
+-- 1、参数列表
+-- 1.1、排队序号、已放行的位置、排队中的优惠券集合
+local seqKey = KEYS[1]
+local admittedKey = KEYS[2]
+local activeKey = KEYS[3]
+-- 1.2、优惠券id、本次放行的人数、排队数据的有效期（秒）
+local voucherId = ARGV[1]
+local batch = tonumber(ARGV[2])
+local ttl = tonumber(ARGV[3])
+
+-- 2、排队数据已过期，不再处理这个优惠券
+local seq = tonumber(redis.call('get', seqKey))
+if (seq == nil) then
+    redis.call('srem', activeKey, voucherId)
+    return -1
+end
+
+-- 3、放行位置向后推进一批，不超过已经取号的人数
+local admitted = tonumber(redis.call('get', admittedKey) or '0')
+if (admitted < seq) then
+    admitted = math.min(seq, admitted + batch)
+    redis.call('set', admittedKey, admitted, 'ex', ttl)
+end
+return admitted
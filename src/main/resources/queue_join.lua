@@ -0,0 +1,23 @@
+-- 1、参数列表
+-- 1.1、排队序号、用户排队位置 hash、排队中的优惠券集合
+local seqKey = KEYS[1]
+local positionKey = KEYS[2]
+local activeKey = KEYS[3]
+-- 1.2、用户id、优惠券id、排队数据的有效期（秒）
+local userId = ARGV[1]
+local voucherId = ARGV[2]
+local ttl = tonumber(ARGV[3])
+
+-- 2、已经在排队的，返回原来的位置
+local position = redis.call('hget', positionKey, userId)
+if (position) then
+    return tonumber(position)
+end
+
+-- 3、取号并记录位置
+position = redis.call('incr', seqKey)
+redis.call('hset', positionKey, userId, position)
+redis.call('expire', seqKey, ttl)
+redis.call('expire', positionKey, ttl)
+redis.call('sadd', activeKey, voucherId)
+return position
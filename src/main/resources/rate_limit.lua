@@ -0,0 +1,25 @@
+-- GCRA 限流：只保存一个“理论到达时间”（TAT），每次请求一次读写
+-- 1、参数列表
+-- 1.1、限流 key
+local key = KEYS[1]
+-- 1.2、当前时间、两次请求的间隔、允许的突发容量（都是毫秒）
+local now = tonumber(ARGV[1])
+local interval = tonumber(ARGV[2])
+local tolerance = tonumber(ARGV[3])
+
+-- 2、计算新的 TAT
+local tat = tonumber(redis.call('get', key))
+if (tat == nil or tat < now) then
+    tat = now
+end
+local newTat = tat + interval
+
+-- 3、超出突发容量，拒绝，返回还需要等待的毫秒数
+local allowAt = newTat - tolerance
+if (allowAt > now) then
+    return allowAt - now
+end
+
+-- 4、放行，TAT 过期后 key 自动删除
+redis.call('set', key, newTat, 'px', newTat - now)
+return 0
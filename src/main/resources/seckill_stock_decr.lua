@@ -0,0 +1,12 @@
+-- 订单创建成功后扣减 Redis 里展示用的库存
+-- 1、参数列表
+-- 1.1、库存 key
+local stockKey = KEYS[1]
+
+-- 2、没有预热过库存的优惠券不扣减，避免凭空生成负数库存
+if (redis.call('exists', stockKey) == 0) then
+    return -1
+end
+
+-- 3、扣减库存
+return redis.call('decr', stockKey)
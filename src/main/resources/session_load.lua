@@ -0,0 +1,15 @@
+-- 读取登录用户和剩余有效期，缓存未命中时一次往返完成 HGETALL 和 PTTL
+-- 续期要同时续用户的 token 集合，集合的 key 要先读出用户id才知道，不能在脚本里拼，交给调用方用 pipeline 续期
+-- 1、参数列表
+-- 1.1、token 的 key
+local key = KEYS[1]
+
+-- 2、用户不存在，返回空列表
+local user = redis.call('hgetall', key)
+if (#user == 0) then
+    return user
+end
+
+-- 3、返回 hash 的字段和值，最后一项是剩余有效期
+table.insert(user, tostring(redis.call('pttl', key)))
+return user
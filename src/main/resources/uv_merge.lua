@@ -0,0 +1,15 @@
+-- 查询多天合并后的 UV，合并结果缓存一段时间，一次往返完成 EXISTS、PFMERGE、EXPIRE 和 PFCOUNT
+-- 1、参数列表
+-- 1.1、合并结果的 key，后面是要合并的每一天的 key
+local mergedKey = KEYS[1]
+-- 1.2、合并结果的有效期（秒）
+local ttl = tonumber(ARGV[1])
+
+-- 2、没有合并结果时才合并
+if (redis.call('exists', mergedKey) == 0) then
+    redis.call('pfmerge', unpack(KEYS))
+    redis.call('expire', mergedKey, ttl)
+end
+
+-- 3、返回合并后的 UV
+return redis.call('pfcount', mergedKey)